@@ -5,6 +5,7 @@ import com.google.common.collect.Sets;
 import eu.fbk.dkm.cliques.cat.Entity;
 import eu.fbk.dkm.cliques.cat.EntityMention;
 import eu.fbk.dkm.cliques.cat.Token;
+import eu.fbk.dkm.cliques.naf.NafInput;
 import eu.fbk.utils.core.CommandLine;
 import eu.fbk.utils.core.diff_match_patch;
 import eu.fbk.utils.eval.PrecisionRecall;
@@ -14,10 +15,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.InputStreamReader;
 import java.util.*;
-import java.util.zip.GZIPInputStream;
 
 /**
  * Created by alessio on 25/01/16.
@@ -37,12 +35,15 @@ public class AlignCatWithNaf {
                             "Align CAT files with NAFs")
                     .withOption("c", "cats", "Input CAT folder", "FILE", CommandLine.Type.DIRECTORY_EXISTING, true,
                             false, true)
-                    .withOption("n", "nafs", "Input NAF folder", "FILE", CommandLine.Type.DIRECTORY_EXISTING, true,
-                            false, true)
+                    .withOption("n", "nafs", "Input NAF folder, or tar, tar.gz or zip archive", "FILE",
+                            CommandLine.Type.FILE, true, false, true)
                     .withLogger(LoggerFactory.getLogger("eu.fbk")).parse(args);
 
             File catFolder = cmd.getOptionValue("cats", File.class);
-            File nafFolder = cmd.getOptionValue("nafs", File.class);
+            File nafInput = cmd.getOptionValue("nafs", File.class);
+            if (!nafInput.exists()) {
+                throw new CommandLine.Exception("Input " + nafInput + " does not exist");
+            }
 
             HashMap<String, CatDocument> catDocuments = new HashMap<>();
             Iterator<File> fileIterator;
@@ -61,25 +62,24 @@ public class AlignCatWithNaf {
             Set<Set> corefSets = new HashSet<>();
 
             LOGGER.info("Reading NAF documents");
-            fileIterator = FileUtils.iterateFiles(nafFolder, new String[] { "naf.gz" }, true);
+            NafInput nafs = NafInput.open(nafInput);
+            NafInput.Entry entry;
             int i = 0;
-            while (fileIterator.hasNext()) {
-                File file = fileIterator.next();
-                String id = file.getName().replaceAll("\\..*", "");
+            while ((entry = nafs.next()) != null) {
+                String id = entry.getFileName().replaceAll("\\..*", "");
                 if (!catDocuments.containsKey(id)) {
-                    LOGGER.trace("Skipping {}", file.getAbsolutePath());
+                    LOGGER.trace("Skipping {}", entry.getName());
                     continue;
                 }
 
                 i++;
                 int diff = i * DIFF_CLUSTERS;
 
-                LOGGER.debug("Parsing {}", file.getAbsolutePath());
+                LOGGER.debug("Parsing {}", entry.getName());
 
                 CatDocument catDocument = catDocuments.get(id);
 
-                GZIPInputStream gis = new GZIPInputStream(new FileInputStream(file));
-                KAFDocument nafDocument = KAFDocument.createFromStream(new InputStreamReader(gis, "UTF-8"));
+                KAFDocument nafDocument = KAFDocument.createFromStream(entry.openReader());
 
                 List<String> strings1 = new ArrayList<>();
                 List<String> strings2 = new ArrayList<>();
@@ -194,6 +194,7 @@ public class AlignCatWithNaf {
                 }
 
             }
+            nafs.close();
 
             Map<PrecisionRecall.Measure, Double> precisionRecall = ClusteringEvaluation
                     .pairWise(finalClusters, corefSets);
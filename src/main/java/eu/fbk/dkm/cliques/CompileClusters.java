@@ -0,0 +1,47 @@
+package eu.fbk.dkm.cliques;
+
+import eu.fbk.dkm.cliques.util.ClusterDictionary;
+import eu.fbk.utils.core.CommandLine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+
+/**
+ * Compiles the clusters and cluster mappings files into the dictionary used by {@link ExtractGraph} and
+ * {@link EvaluateClusters}.
+ */
+
+public class CompileClusters {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CompileClusters.class);
+
+    public static void main(String[] args) {
+        try {
+            final CommandLine cmd = CommandLine
+                    .parser()
+                    .withName("./compile-clusters")
+                    .withHeader(
+                            "Compile clusters and cluster mappings into a cluster dictionary")
+                    .withOption("c", "clusters", "Input file with clusters", "FILE", CommandLine.Type.FILE_EXISTING,
+                            true, false, true)
+                    .withOption("m", "cluster-mappings", "Input file with cluster mappings", "FILE",
+                            CommandLine.Type.FILE_EXISTING, true, false, false)
+                    .withOption("o", "output", "Output file", "FILE", CommandLine.Type.FILE, true, false, true)
+                    .withLogger(LoggerFactory.getLogger("eu.fbk")).parse(args);
+
+            File clustersFile = cmd.getOptionValue("clusters", File.class);
+            File mappingsFile = cmd.getOptionValue("cluster-mappings", File.class);
+            File outputFile = cmd.getOptionValue("output", File.class);
+
+            LOGGER.info("Compiling clusters");
+            ClusterDictionary dictionary = ClusterDictionary.compile(clustersFile, mappingsFile);
+            dictionary.write(outputFile);
+            LOGGER.info("Forms: {}", dictionary.size());
+            LOGGER.info("Clusters: {}", dictionary.getClusterCount());
+
+        } catch (Exception e) {
+            CommandLine.fail(e);
+        }
+    }
+}
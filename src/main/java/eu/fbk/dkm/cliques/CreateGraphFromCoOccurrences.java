@@ -1,11 +1,14 @@
 package eu.fbk.dkm.cliques;
 
 import com.google.common.io.Files;
+import eu.fbk.dkm.cliques.graph.CliqueFinder;
+import eu.fbk.dkm.cliques.graph.CompactGraph;
+import eu.fbk.dkm.cliques.graph.ComponentCliqueFinder;
+import eu.fbk.dkm.cliques.graph.JGraphTCliqueFinder;
+import eu.fbk.dkm.cliques.graph.PivotCliqueFinder;
+import eu.fbk.dkm.cliques.graph.TopCliqueFinder;
+import eu.fbk.dkm.cliques.util.Metrics;
 import eu.fbk.utils.core.CommandLine;
-import org.jgrapht.UndirectedGraph;
-import org.jgrapht.alg.BronKerboschCliqueFinder;
-import org.jgrapht.graph.DefaultEdge;
-import org.jgrapht.graph.SimpleGraph;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -23,6 +26,7 @@ public class CreateGraphFromCoOccurrences {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(CreateGraphFromCoOccurrences.class);
     private static final Integer DEFAULT_MIN_CLIQUE_SIZE = 3;
+    private static final Integer DEFAULT_THREADS = 1;
     private static final Integer DEFAULT_MIN_EDGE_WEIGHT = 2;
 
     public static void main(String[] args) {
@@ -41,6 +45,16 @@ public class CreateGraphFromCoOccurrences {
                             String.format("Min weight for an edge (default %d)", DEFAULT_MIN_EDGE_WEIGHT), "value",
                             CommandLine.Type.INTEGER, true, false, false)
                     .withOption("o", "output", "Output file", "FILE", CommandLine.Type.FILE, true, false, true)
+                    .withOption(null, "shuffle", "Shuffle the cliques before writing them (keeps them all in memory)")
+                    .withOption(null, "use-jgrapht", "Use the (slower) jgrapht Bron-Kerbosch clique finder")
+                    .withOption(null, "top-k", "Only output the k largest cliques", "value",
+                            CommandLine.Type.POSITIVE_INTEGER, true, false, false)
+                    .withOption(null, "max-clique", "Only output a maximum clique (same as --top-k 1)")
+                    .withOption(null, "metrics", "Output file for the JSON report of throughput and timings", "FILE",
+                            CommandLine.Type.FILE, true, false, false)
+                    .withOption(null, "threads",
+                            String.format("Number of threads for the clique search (default %d)", DEFAULT_THREADS),
+                            "value", CommandLine.Type.POSITIVE_INTEGER, true, false, false)
 //                    .withOption("b", "blacklist", "Blacklist file (one person per line)", "FILE",
 //                            CommandLine.Type.FILE_EXISTING, true, false, false)
                     .withLogger(LoggerFactory.getLogger("eu.fbk")).parse(args);
@@ -49,8 +63,19 @@ public class CreateGraphFromCoOccurrences {
             File outputFile = cmd.getOptionValue("output", File.class);
             Integer minCliqueSize = cmd.getOptionValue("min-clique-size", Integer.class, DEFAULT_MIN_CLIQUE_SIZE);
             Integer minEdgeWeight = cmd.getOptionValue("min-edge-weight", Integer.class, DEFAULT_MIN_EDGE_WEIGHT);
+            boolean useJGraphT = cmd.hasOption("use-jgrapht");
+            Integer topK = cmd.getOptionValue("top-k", Integer.class);
+            if (cmd.hasOption("max-clique")) {
+                topK = 1;
+            }
+            boolean shuffle = cmd.hasOption("shuffle");
+            Integer threads = cmd.getOptionValue("threads", Integer.class, DEFAULT_THREADS);
+            File metricsFile = cmd.getOptionValue("metrics", File.class);
+
+            Metrics metrics = new Metrics("create-graph");
+            metrics.startPhase("read");
 
-            UndirectedGraph<String, DefaultEdge> graph = new SimpleGraph<String, DefaultEdge>(DefaultEdge.class);
+            CompactGraph.Builder graphBuilder = CompactGraph.builder();
 
             List<String> lines = Files.readLines(inputFile, Charset.defaultCharset());
             for (String line : lines) {
@@ -70,38 +95,73 @@ public class CreateGraphFromCoOccurrences {
                     continue;
                 }
 
-                graph.addVertex(name1);
-                graph.addVertex(name2);
-
-                graph.addEdge(name1, name2);
+                graphBuilder.addEdge(graphBuilder.addVertex(name1), graphBuilder.addVertex(name2), weight);
             }
-
-            BronKerboschCliqueFinder<String, DefaultEdge> cliqueFinder = new BronKerboschCliqueFinder<>(graph);
-            Collection<Set<String>> cliques = cliqueFinder.getAllMaximalCliques();
-
-            List<String> rows = new ArrayList<>();
-            for (Set<String> clique : cliques) {
-                if (clique.size() < minCliqueSize) {
-                    continue;
-                }
-
-                StringBuilder builder = new StringBuilder();
-                for (String s : clique) {
-                    builder.append(s).append("\t");
-                }
-                rows.add(builder.toString().trim());
+            metrics.add("lines", lines.size());
+
+            metrics.startPhase("build");
+            CompactGraph fullGraph = graphBuilder.build();
+            metrics.set("vertices", fullGraph.getVertexCount());
+            metrics.set("edges", fullGraph.getEdgeCount());
+
+            // Vertices outside the (minCliqueSize - 1)-core cannot be in any reported clique
+            CompactGraph graph = fullGraph.kCore(minCliqueSize - 1);
+            LOGGER.info("Removed {} vertices and {} edges outside the {}-core", new Object[] {
+                    fullGraph.getVertexCount() - graph.getVertexCount(),
+                    fullGraph.getEdgeCount() - graph.getEdgeCount(), minCliqueSize - 1 });
+            fullGraph = null;
+
+            CliqueFinder cliqueFinder;
+            if (topK != null) {
+                cliqueFinder = new TopCliqueFinder(graph, topK, threads);
+            } else if (useJGraphT) {
+                cliqueFinder = new ComponentCliqueFinder(graph, threads,
+                        (component, componentThreads) -> new JGraphTCliqueFinder(component));
+            } else {
+                cliqueFinder = new ComponentCliqueFinder(graph, threads, PivotCliqueFinder::new);
             }
 
-            Collections.shuffle(rows);
-
+            metrics.startPhase("cliques");
             BufferedWriter writer = new BufferedWriter(new FileWriter(outputFile));
-            for (String row : rows) {
-                writer.append(row).append("\n");
+            if (shuffle) {
+                List<String> rows = new ArrayList<>();
+                cliqueFinder.findCliques(minCliqueSize, clique -> {
+                    synchronized (rows) {
+                        rows.add(toRow(graph, clique));
+                    }
+                    metrics.increment("cliques");
+                });
+
+                Collections.shuffle(rows);
+                for (String row : rows) {
+                    writer.append(row).append("\n");
+                }
+            } else {
+                cliqueFinder.findCliques(minCliqueSize, clique -> {
+                    String row = toRow(graph, clique);
+                    synchronized (writer) {
+                        writer.append(row).append("\n");
+                    }
+                    metrics.increment("cliques");
+                });
             }
             writer.close();
 
+            metrics.close();
+            if (metricsFile != null) {
+                metrics.write(metricsFile);
+            }
+
         } catch (Exception e) {
             CommandLine.fail(e);
         }
     }
+
+    private static String toRow(CompactGraph graph, int[] clique) {
+        StringBuilder builder = new StringBuilder();
+        for (int v : clique) {
+            builder.append(graph.getName(v)).append("\t");
+        }
+        return builder.toString().trim();
+    }
 }
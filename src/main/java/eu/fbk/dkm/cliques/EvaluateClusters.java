@@ -1,6 +1,8 @@
 package eu.fbk.dkm.cliques;
 
 import com.google.common.collect.Sets;
+import eu.fbk.dkm.cliques.util.ClusterDictionary;
+import eu.fbk.dkm.cliques.util.Metrics;
 import eu.fbk.twm.index.FormPageSearcher;
 import eu.fbk.twm.index.PageAirpediaTypeSearcher;
 import eu.fbk.twm.index.util.FreqSetSearcher;
@@ -11,14 +13,10 @@ import eu.fbk.utils.core.CommandLine;
 import eu.fbk.utils.core.FrequencyHashSet;
 import eu.fbk.utils.core.diff_match_patch;
 import eu.fbk.utils.eval.PrecisionRecall;
-import org.apache.commons.csv.CSVFormat;
-import org.apache.commons.csv.CSVRecord;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
-import java.io.FileReader;
-import java.io.Reader;
 import java.nio.file.Files;
 import java.util.*;
 
@@ -54,6 +52,11 @@ public class EvaluateClusters {
                             false, false)
                     .withOption("m", "links-cluster-mapping", "Links cluster with mappings", "FILE",
                             CommandLine.Type.FILE_EXISTING, true, false, false)
+                    .withOption(null, "cluster-dictionary",
+                            "Cluster dictionary built with ./compile-clusters, instead of links cluster and mappings",
+                            "FILE", CommandLine.Type.FILE_EXISTING, true, false, false)
+                    .withOption(null, "metrics", "Output file for the JSON report of throughput and timings", "FILE",
+                            CommandLine.Type.FILE, true, false, false)
                     .withLogger(LoggerFactory.getLogger("eu.fbk")).parse(args);
 
             File goldFile = cmd.getOptionValue("gold", File.class);
@@ -64,36 +67,24 @@ public class EvaluateClusters {
 
             File linksClusterFile = cmd.getOptionValue("links-cluster", File.class);
             File linksClusterMapFile = cmd.getOptionValue("links-cluster-mapping", File.class);
+            File clusterDictionaryFile = cmd.getOptionValue("cluster-dictionary", File.class);
+            File metricsFile = cmd.getOptionValue("metrics", File.class);
 
             // ---
 
             diff_match_patch dmp = new diff_match_patch();
-            HashMap<String, String> clusters = new HashMap<>();
             HashMap<String, String> clLinks = new HashMap<>();
 
-            Reader in;
-            if (linksClusterFile != null) {
-                in = new FileReader(linksClusterFile);
-                for (CSVRecord record : CSVFormat.newFormat('\t').parse(in)) {
-                    String clusterName = record.get(0);
-                    for (int i = 1; i < record.size(); i++) {
-                        clusters.put(record.get(i), clusterName);
-                    }
-                }
-                in.close();
-            }
-            if (linksClusterMapFile != null) {
-                in = new FileReader(linksClusterMapFile);
-                for (CSVRecord record : CSVFormat.newFormat('\t').parse(in)) {
-                    String cluster = clusters.get(record.get(1));
-                    if (cluster != null) {
-                        clusters.put(record.get(0), cluster);
-                    }
-                }
-                in.close();
+            Metrics metrics = new Metrics("evaluate-clusters");
+            metrics.startPhase("load");
+            ClusterDictionary clusters;
+            if (clusterDictionaryFile != null) {
+                clusters = ClusterDictionary.open(clusterDictionaryFile);
+            } else {
+                clusters = ClusterDictionary.compile(linksClusterFile, linksClusterMapFile);
             }
 
-            LOGGER.debug("Clusters: {}", clusters);
+            LOGGER.debug("Clusters: {}", clusters.size());
 
             AirpediaOntology ontology = new AirpediaOntology(ontologyFile.getAbsolutePath());
             HashMap<String, DBpediaOntologyNode> lcNodes = new HashMap<>();
@@ -114,12 +105,14 @@ public class EvaluateClusters {
 
             List<String> lines;
 
+            metrics.startPhase("links");
             lines = Files.readAllLines(linksFile.toPath());
             for (String line : lines) {
                 line = line.trim();
                 String[] parts = line.split("\t");
 
                 String clusterName = parts[0];
+                metrics.increment("links");
                 String[] tokens = clusterName.split("\\s+");
                 if (tokens.length <= 1) {
                     continue;
@@ -209,6 +202,7 @@ public class EvaluateClusters {
                 baseline.remove("Agent");
             }
 
+            metrics.startPhase("evaluate");
             lines = Files.readAllLines(goldFile.toPath());
             for (String line : lines) {
                 line = line.trim();
@@ -235,6 +229,7 @@ public class EvaluateClusters {
                     String[] subparts = parts[i].split("\\|");
 
                     String name = subparts[0];
+                    metrics.increment("names");
 //                    String thisClass;
 //                    try {
 //                        thisClass = subparts[1];
@@ -419,6 +414,11 @@ public class EvaluateClusters {
             System.out.println("Baseline groups: " + evaluatorBaselineGroups.getResult());
             System.out.println("Groups: " + evaluatorGroups.getResult());
 
+            metrics.close();
+            if (metricsFile != null) {
+                metrics.write(metricsFile);
+            }
+
         } catch (Exception e) {
             CommandLine.fail(e);
         }
@@ -1,22 +1,22 @@
 package eu.fbk.dkm.cliques;
 
 import com.google.common.base.Charsets;
-import com.google.common.collect.Sets;
 import com.google.common.io.Files;
-import com.google.gson.JsonArray;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
+import eu.fbk.dkm.cliques.tint.TintReader;
+import eu.fbk.dkm.cliques.util.Metrics;
+import eu.fbk.dkm.cliques.util.NameResolver;
+import eu.fbk.dkm.cliques.util.PairCounter;
 import eu.fbk.utils.core.CommandLine;
 import eu.fbk.utils.core.FrequencyHashSet;
-import org.apache.commons.io.FileUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.BufferedWriter;
-import java.io.File;
-import java.io.FileWriter;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Created by alessio on 16/11/16.
@@ -25,6 +25,7 @@ import java.util.*;
 public class ExtractCoOccurrences {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(ExtractCoOccurrences.class);
+    private static final Integer DEFAULT_THREADS = 1;
 
 //    private static boolean ADD_SINGLE_TOKEN_PERSONS = true;
 //    private static boolean NAME_NORMALIZATION = false;
@@ -45,6 +46,17 @@ public class ExtractCoOccurrences {
                             false, false)
                     .withOption("b", "blacklist", "Blacklist file (one person per line)", "FILE",
                             CommandLine.Type.FILE_EXISTING, true, false, false)
+                    .withOption(null, "metrics", "Output file for the JSON report of throughput and timings", "FILE",
+                            CommandLine.Type.FILE, true, false, false)
+                    .withOption(null, "threads",
+                            String.format("Number of threads reading the files (default %d)", DEFAULT_THREADS),
+                            "value", CommandLine.Type.POSITIVE_INTEGER, true, false, false)
+                    .withOption(null, "pair-memory",
+                            "Memory for counting pairs in MB, beyond which sorted runs are written to disk and merged "
+                                    + "(default: no limit)", "MB", CommandLine.Type.POSITIVE_INTEGER, true, false,
+                            false)
+                    .withOption(null, "temp-folder", "Folder of the runs of pairs (default: system temp folder)",
+                            "FOLDER", CommandLine.Type.DIRECTORY_EXISTING, true, false, false)
                     .withOption("s", "skip-name-normalization", "Skip name normalization")
                     .withOption("t", "add-single-token-persons", "Add single token persons")
                     .withLogger(LoggerFactory.getLogger("eu.fbk")).parse(args);
@@ -54,13 +66,15 @@ public class ExtractCoOccurrences {
             File outputFileLinks = cmd.getOptionValue("output-links", File.class);
             File outputFilePersons = cmd.getOptionValue("output-persons", File.class);
             File blacklistFile = cmd.getOptionValue("blacklist", File.class);
+            File metricsFile = cmd.getOptionValue("metrics", File.class);
+            Integer threads = cmd.getOptionValue("threads", Integer.class, DEFAULT_THREADS);
+            Integer pairMemory = cmd.getOptionValue("pair-memory", Integer.class);
+            File tempFolder = cmd.getOptionValue("temp-folder", File.class);
 
             boolean addSingleTokenPersons = cmd.hasOption("add-single-token-persons");
             boolean skipNameNormalization = cmd.hasOption("skip-name-normalization");
 
-            FrequencyHashSet<Set<String>> clusters = new FrequencyHashSet<>();
-            FrequencyHashSet<Set<String>> connections = new FrequencyHashSet<>();
-            Set<String> allPersons = new HashSet<>();
+            Metrics metrics = new Metrics("extract-co-occurrences");
 
             Set<String> blacklist = new HashSet<>();
             if (blacklistFile != null) {
@@ -73,104 +87,56 @@ public class ExtractCoOccurrences {
                 }
             }
 
-            Map<String, FrequencyHashSet<String>> frequencies = new HashMap<>();
-
+            List<File> files = new ArrayList<>();
             for (File file : inputFolder.listFiles()) {
-                if (!file.isFile()) {
-                    continue;
-                }
-
-                LOGGER.info(file.getName());
-                long size = file.length();
-                if (size == 0) {
-                    continue;
+                if (file.isFile() && file.length() > 0) {
+                    files.add(file);
                 }
+            }
 
-                // Group by day
-//                String day = file.getName().substring(0, 10);
-
-                String content = FileUtils.readFileToString(file);
-                JsonElement jelement = new JsonParser().parse(content);
-                JsonObject jobject = jelement.getAsJsonObject();
-                JsonArray jSentences = jobject.getAsJsonArray("sentences");
-
-                Set<String> docPersons = new HashSet<>();
-
-                for (JsonElement jSentence : jSentences) {
-                    Set<String> persons = new HashSet<>();
-                    StringBuffer isPER = null;
-
-                    JsonArray jTokens = jSentence.getAsJsonObject().getAsJsonArray("tokens");
-                    for (JsonElement jToken : jTokens) {
-                        boolean thisIsPER = jToken.getAsJsonObject().get("ner").getAsString().equals("PER");
-                        String form = jToken.getAsJsonObject().get("originalText").getAsString();
-
-                        if (isPER == null && thisIsPER) {
-                            isPER = new StringBuffer();
-                            isPER.append(form).append(" ");
-                        } else if (isPER != null && thisIsPER) {
-                            isPER.append(form).append(" ");
-                        } else if (isPER != null && !thisIsPER) {
-                            String personName = isPER.toString().trim();
-                            personName = personName.replaceAll(",", "");
-                            personName = personName.replaceAll("\\s+", " ");
-
-                            if (!skipNameNormalization) {
-                                for (String docPerson : docPersons) {
-                                    if (docPerson.endsWith(personName)) {
-                                        personName = docPerson;
-                                        break;
-                                    }
+            metrics.startPhase("parse");
+            Counts counts;
+            if (threads > 1 && files.size() > 1) {
+                AtomicInteger next = new AtomicInteger();
+                List<ForkJoinTask<Counts>> tasks = new ArrayList<>();
+                ForkJoinPool pool = new ForkJoinPool(threads);
+                try {
+                    for (int i = 0; i < threads; i++) {
+                        tasks.add(pool.submit(() -> {
+                            Counts workerCounts = new Counts();
+                            int index;
+                            while ((index = next.getAndIncrement()) < files.size()) {
+                                try {
+                                    read(files.get(index), workerCounts, addSingleTokenPersons,
+                                            skipNameNormalization, metrics);
+                                } catch (IOException e) {
+                                    throw new UncheckedIOException(e);
                                 }
                             }
-
-                            if (addSingleTokenPersons || personName.contains(" ")) {
-                                persons.add(personName);
-                                docPersons.add(personName);
-                            }
-                            isPER = null;
-                        }
+                            return workerCounts;
+                        }));
                     }
-                    if (isPER != null) {
-                        String personName = isPER.toString().trim();
-                        personName = personName.replaceAll(",", "");
-                        personName = personName.replaceAll("\\s+", " ");
-
-                        if (!skipNameNormalization) {
-                            for (String docPerson : docPersons) {
-                                if (docPerson.endsWith(personName)) {
-                                    personName = docPerson;
-                                    break;
-                                }
-                            }
-                        }
-
-                        if (addSingleTokenPersons || personName.contains(" ")) {
-                            persons.add(personName);
-                            docPersons.add(personName);
-                        }
-                    }
-
-                    if (persons.size() > 1) {
-                        clusters.add(persons);
-                        allPersons.addAll(persons);
-//                        System.out.println(persons);
+                    counts = new Counts();
+                    for (ForkJoinTask<Counts> task : tasks) {
+                        counts.merge(task.join());
                     }
+                } catch (UncheckedIOException e) {
+                    throw e.getCause();
+                } finally {
+                    pool.shutdownNow();
                 }
-
-                // Add linkings
-                JsonArray jLinkings = jobject.getAsJsonArray("linkings");
-                for (JsonElement jLinking : jLinkings) {
-                    String page = jLinking.getAsJsonObject().get("page").getAsString();
-                    String form = jLinking.getAsJsonObject().get("originalText").getAsString();
-                    if (docPersons.contains(form)) {
-                        frequencies.putIfAbsent(form, new FrequencyHashSet<>());
-                        frequencies.get(form).add(page);
-                    }
+            } else {
+                counts = new Counts();
+                for (File file : files) {
+                    read(file, counts, addSingleTokenPersons, skipNameNormalization, metrics);
                 }
-
             }
+            FrequencyHashSet<Set<String>> clusters = counts.clusters;
+            Set<String> allPersons = counts.allPersons;
+            Map<String, FrequencyHashSet<String>> frequencies = counts.frequencies;
+            metrics.set("persons", allPersons.size());
 
+            metrics.startPhase("write");
             if (outputFileLinks != null) {
                 BufferedWriter lWriter = new BufferedWriter(new FileWriter(outputFileLinks));
                 for (String form : frequencies.keySet()) {
@@ -189,43 +155,181 @@ public class ExtractCoOccurrences {
                 lWriter.close();
             }
 
+            metrics.startPhase("pairs");
+            PairCounter connections;
+            if (pairMemory != null) {
+                int maxPairs = (int) Math.min(Integer.MAX_VALUE - 8,
+                        Math.max(1024, ((long) pairMemory << 20) / PairCounter.BYTES_PER_PAIR));
+                connections = new PairCounter(maxPairs, tempFolder);
+            } else {
+                connections = new PairCounter();
+            }
             for (Set<String> cluster : clusters.keySet()) {
                 Integer size = clusters.get(cluster);
 
-                Set<Set<String>> pairs = new HashSet<>();
-                for (String s1 : cluster) {
-                    for (String s2 : cluster) {
-                        if (s1.equals(s2)) {
-                            continue;
-                        }
-
-                        if (blacklist.contains(s1) || blacklist.contains(s2)) {
-                            continue;
-                        }
-
-                        pairs.add(Sets.newHashSet(s1, s2));
+                int[] ids = new int[cluster.size()];
+                int n = 0;
+                for (String name : cluster) {
+                    if (!blacklist.contains(name)) {
+                        ids[n++] = connections.intern(name);
                     }
-
                 }
-
-                for (Set<String> pair : pairs) {
-                    connections.add(pair, size);
+                for (int i = 0; i < n; i++) {
+                    for (int j = i + 1; j < n; j++) {
+                        connections.add(ids[i], ids[j], size);
+                    }
                 }
             }
+            metrics.set("pairRuns", connections.getRunCount());
 
+            metrics.startPhase("write");
             BufferedWriter writer = new BufferedWriter(new FileWriter(outputFile));
-            for (Map.Entry<Set<String>, Integer> entry : connections.getSorted()) {
-                Set<String> set = entry.getKey();
-                Integer frequency = entry.getValue();
-                for (String name : set) {
-                    writer.append(name).append(",");
-                }
+            connections.forEachSorted((name1, name2, frequency) -> {
+                writer.append(name1).append(",").append(name2).append(",");
                 writer.append(Integer.toString(frequency)).append("\n");
-            }
+                metrics.increment("pairs");
+            });
             writer.close();
 
+            metrics.close();
+            if (metricsFile != null) {
+                metrics.write(metricsFile);
+            }
+
         } catch (Exception e) {
             CommandLine.fail(e);
         }
     }
+
+    private static void read(File file, Counts counts, boolean addSingleTokenPersons, boolean skipNameNormalization,
+            Metrics metrics) throws IOException {
+        LOGGER.info(file.getName());
+
+        // Group by day
+//        String day = file.getName().substring(0, 10);
+
+        DocumentHandler document = new DocumentHandler(addSingleTokenPersons, skipNameNormalization, counts);
+        Reader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8));
+        try {
+            TintReader.read(in, document);
+        } catch (IOException | IllegalStateException e) {
+            throw new IOException("Cannot parse " + file, e);
+        } finally {
+            in.close();
+        }
+        document.addLinkings();
+
+        metrics.increment("documents");
+        metrics.add("sentences", document.sentences);
+    }
+
+    /**
+     * Sets of persons in the same sentence, persons and their links, counted by a thread over its documents and then
+     * merged.
+     */
+    private static class Counts {
+
+        final FrequencyHashSet<Set<String>> clusters = new FrequencyHashSet<>();
+        final Set<String> allPersons = new HashSet<>();
+        final Map<String, FrequencyHashSet<String>> frequencies = new HashMap<>();
+
+        void merge(Counts other) {
+            clusters.addAll(other.clusters);
+            allPersons.addAll(other.allPersons);
+            for (Map.Entry<String, FrequencyHashSet<String>> entry : other.frequencies.entrySet()) {
+                FrequencyHashSet<String> pages = frequencies.get(entry.getKey());
+                if (pages == null) {
+                    frequencies.put(entry.getKey(), entry.getValue());
+                } else {
+                    pages.addAll(entry.getValue());
+                }
+            }
+        }
+    }
+
+    /**
+     * Collects the persons of the sentences of a document, normalizing each name to the longest earlier name ending
+     * with its tokens, and the links of the persons.
+     */
+    private static class DocumentHandler implements TintReader.Handler {
+
+        private final boolean addSingleTokenPersons;
+        private final boolean skipNameNormalization;
+        private final Counts counts;
+        private final NameResolver docPersons = new NameResolver();
+        private final List<String[]> linkings = new ArrayList<>();
+        private Set<String> persons = new HashSet<>();
+        private StringBuilder isPER = null;
+        int sentences = 0;
+
+        DocumentHandler(boolean addSingleTokenPersons, boolean skipNameNormalization, Counts counts) {
+            this.addSingleTokenPersons = addSingleTokenPersons;
+            this.skipNameNormalization = skipNameNormalization;
+            this.counts = counts;
+        }
+
+        @Override
+        public void token(String form, boolean person) {
+            if (person) {
+                if (isPER == null) {
+                    isPER = new StringBuilder();
+                }
+                isPER.append(form).append(" ");
+            } else if (isPER != null) {
+                addPerson();
+            }
+        }
+
+        @Override
+        public void endSentence() {
+            if (isPER != null) {
+                addPerson();
+            }
+            if (persons.size() > 1) {
+                counts.clusters.add(persons);
+                counts.allPersons.addAll(persons);
+            }
+            persons = new HashSet<>();
+            sentences++;
+        }
+
+        @Override
+        public void linking(String page, String form) {
+            linkings.add(new String[] { page, form });
+        }
+
+        /**
+         * Add the links of the persons of the document, once all its sentences have been read.
+         */
+        void addLinkings() {
+            Map<String, FrequencyHashSet<String>> frequencies = counts.frequencies;
+            for (String[] linking : linkings) {
+                String page = linking[0];
+                String form = linking[1];
+                if (docPersons.contains(form)) {
+                    frequencies.putIfAbsent(form, new FrequencyHashSet<>());
+                    frequencies.get(form).add(page);
+                }
+            }
+        }
+
+        private void addPerson() {
+            String personName = isPER.toString().trim();
+            personName = personName.replaceAll(",", "");
+            personName = personName.replaceAll("\\s+", " ");
+
+            if (!skipNameNormalization) {
+                String docPerson = docPersons.resolve(personName);
+                if (docPerson != null) {
+                    personName = docPerson;
+                }
+            }
+
+            if (addSingleTokenPersons || personName.contains(" ")) {
+                persons.add(personName);
+                docPersons.add(personName);
+            }
+            isPER = null;
+        }
+    }
 }
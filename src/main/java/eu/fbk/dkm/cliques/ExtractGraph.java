@@ -1,24 +1,33 @@
 package eu.fbk.dkm.cliques;
 
 import com.google.common.collect.HashMultimap;
+import eu.fbk.dkm.cliques.graph.AlmostCliqueExpander;
+import eu.fbk.dkm.cliques.graph.CliqueFinder;
+import eu.fbk.dkm.cliques.graph.CompactGraph;
+import eu.fbk.dkm.cliques.graph.ComponentCliqueFinder;
+import eu.fbk.dkm.cliques.graph.GraphSnapshot;
+import eu.fbk.dkm.cliques.graph.JGraphTCliqueFinder;
+import eu.fbk.dkm.cliques.graph.PivotCliqueFinder;
+import eu.fbk.dkm.cliques.graph.TopCliqueFinder;
+import eu.fbk.dkm.cliques.naf.DocumentExtraction.Candidate;
+import eu.fbk.dkm.cliques.naf.DocumentExtraction.Mention;
+import eu.fbk.dkm.cliques.naf.DocumentExtractor;
+import eu.fbk.dkm.cliques.naf.ExtractionCache;
+import eu.fbk.dkm.cliques.naf.NafInput;
+import eu.fbk.dkm.cliques.naf.NafPipeline;
+import eu.fbk.dkm.cliques.util.BirthYearIndex;
+import eu.fbk.dkm.cliques.util.ClusterDictionary;
+import eu.fbk.dkm.cliques.util.LinkStatistics;
+import eu.fbk.dkm.cliques.util.Metrics;
+import eu.fbk.dkm.cliques.util.TypeRegistry;
 import eu.fbk.utils.core.CommandLine;
 import eu.fbk.utils.core.FrequencyHashSet;
-import ixa.kaflib.*;
-import org.apache.commons.csv.CSVFormat;
-import org.apache.commons.csv.CSVRecord;
-import org.apache.commons.io.FileUtils;
-import org.jgrapht.UndirectedGraph;
-import org.jgrapht.alg.BronKerboschCliqueFinder;
-import org.jgrapht.alg.NeighborIndex;
-import org.jgrapht.graph.DefaultEdge;
-import org.jgrapht.graph.SimpleGraph;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.zip.GZIPInputStream;
 
 /**
  * Created by alessio on 15/01/16.
@@ -29,7 +38,10 @@ public class ExtractGraph {
     private static final Logger LOGGER = LoggerFactory.getLogger(ExtractGraph.class);
     private static final Integer DEFAULT_MAX_BIRTH_YEAR = 1943;
     private static final Integer DEFAULT_MIN_CLIQUE_SIZE = 3;
+    private static final Integer DEFAULT_THREADS = 1;
     private static final Integer DEFAULT_MIN_CLIQUE_SIZE_FOR_ALMOST = 4;
+    private static final Integer DEFAULT_MIN_EDGE_WEIGHT = 1;
+    private static final Integer DEFAULT_MAX_TYPE_SETS = 100000;
 
 //    private static boolean CHECK_SPOTTED = false;
 //    private static boolean CHECK_YOUNG = true;
@@ -60,16 +72,36 @@ public class ExtractGraph {
                     .withName("./extract-graph")
                     .withHeader(
                             "Extract person names in a NAF set of files")
-                    .withOption("i", "input", "Input folder", "FILE", CommandLine.Type.DIRECTORY_EXISTING, true, false,
-                            true)
+                    .withOption("i", "input", "Input folder, or tar, tar.gz or zip archive of NAFs", "FILE",
+                            CommandLine.Type.FILE, true, false, false)
                     .withOption("c", "clusters", "Input file with clusters", "FILE", CommandLine.Type.FILE_EXISTING,
-                            true, false, true)
+                            true, false, false)
                     .withOption("m", "cluster-mappings", "Input file with cluster mappings", "FILE",
-                            CommandLine.Type.FILE_EXISTING, true, false, true)
-                    .withOption("d", "dates", "List of dates", "FILE", CommandLine.Type.FILE_EXISTING, true, false,
-                            true)
+                            CommandLine.Type.FILE_EXISTING, true, false, false)
+                    .withOption(null, "cluster-dictionary",
+                            "Cluster dictionary built with ./compile-clusters, instead of clusters and mappings",
+                            "FILE", CommandLine.Type.FILE_EXISTING, true, false, false)
+                    .withOption("d", "dates", "List of dates, or index built with ./index-dates", "FILE",
+                            CommandLine.Type.FILE_EXISTING, true, false, false)
                     .withOption("o", "output", "Output file", "FILE", CommandLine.Type.FILE, true, false, false)
                     .withOption("l", "output-links", "Output file", "FILE", CommandLine.Type.FILE, true, false, false)
+                    .withOption(null, "output-link-stats",
+                            "Output file for the links with count, error (count inherited with --max-links-per-cluster), "
+                                    + "mean and max confidence", "FILE",
+                            CommandLine.Type.FILE, true, false, false)
+                    .withOption(null, "max-links-per-cluster", "Only keep the most frequent links of each cluster",
+                            "value", CommandLine.Type.POSITIVE_INTEGER, true, false, false)
+                    .withOption(null, "save-graph", "Save the extracted graph to a binary file", "FILE",
+                            CommandLine.Type.FILE, true, false, false)
+                    .withOption(null, "load-graph", "Load the graph from a file written with --save-graph, "
+                                    + "instead of reading the NAF files", "FILE", CommandLine.Type.FILE_EXISTING, true,
+                            false, false)
+                    .withOption(null, "cache", "Folder where the extraction of each NAF is cached", "FOLDER",
+                            CommandLine.Type.DIRECTORY, true, false, false)
+                    .withOption(null, "metrics", "Output file for the JSON report of throughput and timings", "FILE",
+                            CommandLine.Type.FILE, true, false, false)
+                    .withOption(null, "output-edges", "Output file for the weighted edges (for update-cliques)", "FILE",
+                            CommandLine.Type.FILE, true, false, false)
                     .withOption(null, "min-clique-size",
                             String.format("Min size for a clique (default %d)", DEFAULT_MIN_CLIQUE_SIZE), "value",
                             CommandLine.Type.INTEGER, true, false, false)
@@ -77,6 +109,13 @@ public class ExtractGraph {
                             String.format("Min size for finding an almost-clique (default %d)",
                                     DEFAULT_MIN_CLIQUE_SIZE_FOR_ALMOST), "value", CommandLine.Type.INTEGER, true, false,
                             false)
+                    .withOption(null, "min-edge-weight",
+                            String.format("Min number of sentences for an edge (default %d)", DEFAULT_MIN_EDGE_WEIGHT),
+                            "value", CommandLine.Type.POSITIVE_INTEGER, true, false, false)
+                    .withOption(null, "max-type-sets",
+                            String.format("Max number of distinct DBpedia type sets kept in memory (default %d)",
+                                    DEFAULT_MAX_TYPE_SETS), "value", CommandLine.Type.POSITIVE_INTEGER, true, false,
+                            false)
                     .withOption(null, "max-birth-year",
                             String.format("Maximum year of birth (default %d)",
                                     DEFAULT_MAX_BIRTH_YEAR), "year", CommandLine.Type.INTEGER, true, false,
@@ -85,233 +124,231 @@ public class ExtractGraph {
                     .withOption(null, "use-clusters", "Use clusters")
                     .withOption(null, "use-coref", "Use coreference")
                     .withOption(null, "use-spotted", "Use spotted in DBpedia")
+                    .withOption(null, "use-kaflib", "Read NAFs with the (slower) kaflib parser")
+                    .withOption(null, "use-jgrapht", "Use the (slower) jgrapht Bron-Kerbosch clique finder")
+                    .withOption(null, "top-k", "Only output the k largest cliques", "value",
+                            CommandLine.Type.POSITIVE_INTEGER, true, false, false)
+                    .withOption(null, "max-clique", "Only output a maximum clique (same as --top-k 1)")
+                    .withOption(null, "threads",
+                            String.format("Number of threads for parsing NAFs and for the clique search (default %d)",
+                                    DEFAULT_THREADS), "value", CommandLine.Type.POSITIVE_INTEGER, true, false, false)
                     .withLogger(LoggerFactory.getLogger("eu.fbk")).parse(args);
 
-            File inputFolder = cmd.getOptionValue("input", File.class);
+            File input = cmd.getOptionValue("input", File.class);
             File csvFile = cmd.getOptionValue("clusters", File.class);
             File csvFileMap = cmd.getOptionValue("cluster-mappings", File.class);
+            File clusterDictionaryFile = cmd.getOptionValue("cluster-dictionary", File.class);
             File datesFile = cmd.getOptionValue("dates", File.class);
 
             File outputFile = cmd.getOptionValue("output", File.class);
             File outputLinksFile = cmd.getOptionValue("output-links", File.class);
+            File outputLinkStatsFile = cmd.getOptionValue("output-link-stats", File.class);
+            File outputEdgesFile = cmd.getOptionValue("output-edges", File.class);
+            File saveGraphFile = cmd.getOptionValue("save-graph", File.class);
+            File loadGraphFile = cmd.getOptionValue("load-graph", File.class);
+            File cacheFolder = cmd.getOptionValue("cache", File.class);
+            File metricsFile = cmd.getOptionValue("metrics", File.class);
+            if (loadGraphFile == null && (input == null || datesFile == null
+                    || clusterDictionaryFile == null && (csvFile == null || csvFileMap == null))) {
+                throw new CommandLine.Exception("Input, clusters and cluster mappings (or cluster dictionary) and "
+                        + "dates are needed, unless the graph is loaded with --load-graph");
+            }
+            if (input != null && !input.exists()) {
+                throw new CommandLine.Exception("Input " + input + " does not exist");
+            }
 
             boolean useAlmostCliques = cmd.hasOption("use-almost");
             boolean useClusters = cmd.hasOption("use-clusters");
             boolean useCoref = cmd.hasOption("use-coref");
             boolean useSpotted = cmd.hasOption("use-spotted");
+            boolean useKaflib = cmd.hasOption("use-kaflib");
+            boolean useJGraphT = cmd.hasOption("use-jgrapht");
+            Integer topK = cmd.getOptionValue("top-k", Integer.class);
+            if (cmd.hasOption("max-clique")) {
+                topK = 1;
+            }
+            Integer threads = cmd.getOptionValue("threads", Integer.class, DEFAULT_THREADS);
 
             Integer minCliqueSize = cmd.getOptionValue("min-clique-size", Integer.class, DEFAULT_MIN_CLIQUE_SIZE);
+            Integer minEdgeWeight = cmd.getOptionValue("min-edge-weight", Integer.class, DEFAULT_MIN_EDGE_WEIGHT);
             Integer maxBirthYear = cmd.getOptionValue("max-birth-year", Integer.class, DEFAULT_MAX_BIRTH_YEAR);
+            Integer maxTypeSets = cmd.getOptionValue("max-type-sets", Integer.class, DEFAULT_MAX_TYPE_SETS);
+            Integer maxLinksPerCluster = cmd.getOptionValue("max-links-per-cluster", Integer.class, 0);
             Integer minCliqueSizeForAlmost = cmd
                     .getOptionValue("min-almost-clique-size", Integer.class, DEFAULT_MIN_CLIQUE_SIZE_FOR_ALMOST);
 
-            HashMap<String, String> clusters = new HashMap<>();
-            HashMap<String, Integer> birthDates = new HashMap<>();
-            Reader in;
-
-            if (useClusters) {
-                LOGGER.info("Loading clusters files");
-
-                in = new FileReader(csvFile);
-                for (CSVRecord record : CSVFormat.newFormat('\t').parse(in)) {
-                    String clusterName = record.get(0);
-                    for (int i = 1; i < record.size(); i++) {
-                        clusters.put(record.get(i), clusterName);
-                    }
-                }
-                in.close();
-
-                in = new FileReader(csvFileMap);
-                for (CSVRecord record : CSVFormat.newFormat('\t').parse(in)) {
-                    String cluster = clusters.get(record.get(1));
-                    if (cluster != null) {
-                        clusters.put(record.get(0), cluster);
-                    }
-                }
-                in.close();
-            }
-
-            LOGGER.info("Loading dates file");
-            in = new FileReader(datesFile);
-            for (CSVRecord record : CSVFormat.newFormat('\t').parse(in)) {
-                String pageID = record.get(1);
-                if (record.get(2) != null && !record.get(2).equals("null")) {
-                    birthDates.put("http://dbpedia.org/resource/" + pageID, Integer.parseInt(record.get(2)));
-                }
-            }
-            in.close();
-
-            HashMultimap<String, String> topics = HashMultimap.create();
-            HashMap<String, HashMap<String, Double>> linksForClusters = new HashMap<>();
+            Metrics metrics = new Metrics("extract-graph");
+            LinkStatistics linksForClusters = new LinkStatistics(maxLinksPerCluster);
             AtomicInteger skipped = new AtomicInteger(0);
-            Integer modifiedCliques = 0;
-            Integer addedPersons = 0;
-
-            UndirectedGraph<String, DefaultEdge> graph = new SimpleGraph<String, DefaultEdge>(DefaultEdge.class);
-
-            LOGGER.info("Looping NAFs");
-            Iterator<File> fileIterator = FileUtils.iterateFiles(inputFolder, new String[] { "naf.gz" }, true);
-            while (fileIterator.hasNext()) {
-                File file = fileIterator.next();
-
-                LOGGER.debug(file.getAbsolutePath());
-                GZIPInputStream gis = new GZIPInputStream(new FileInputStream(file));
-                KAFDocument document = KAFDocument.createFromStream(new InputStreamReader(gis, "UTF-8"));
-
-                HashMultimap<Term, LinkedEntity> linkedEntityHashMultimap = HashMultimap.create();
-                HashMultimap<Term, Term> corefHashMultimap = HashMultimap.create();
-                HashMultimap<Term, Entity> entityHashMultimap = HashMultimap.create();
-
-                HashMap<WF, Term> termsMap = new HashMap<>();
-                for (Term term : document.getTerms()) {
-                    for (WF wf : term.getWFs()) {
-                        termsMap.put(wf, term);
-                    }
+            CompactGraph weightedGraph;
+
+            metrics.startPhase("load");
+            if (loadGraphFile != null) {
+                LOGGER.info("Loading graph");
+                GraphSnapshot snapshot = GraphSnapshot.read(loadGraphFile);
+                weightedGraph = snapshot.getGraph();
+                linksForClusters.merge(snapshot.getLinks());
+            } else {
+                ClusterDictionary clusters;
+                if (!useClusters) {
+                    clusters = ClusterDictionary.compile(null, null);
+                } else if (clusterDictionaryFile != null) {
+                    LOGGER.info("Loading cluster dictionary");
+                    clusters = ClusterDictionary.open(clusterDictionaryFile);
+                } else {
+                    LOGGER.info("Loading clusters files");
+                    clusters = ClusterDictionary.compile(csvFile, csvFileMap);
                 }
 
-                Set<WF> okWFs = new HashSet<WF>();
-                List<LinkedEntity> linkedEntities = document.getLinkedEntities();
-                for (LinkedEntity linkedEntity : linkedEntities) {
-                    if (linkedEntity.isSpotted()) {
-                        for (WF wf : linkedEntity.getWFs().getTargets()) {
-                            okWFs.add(wf);
-                        }
-                    }
-                    if (linkedEntity.getTypes().get("DBPEDIA") != null) {
-                        String reference = linkedEntity.getReference();
-                        topics.putAll(reference, linkedEntity.getTypes().get("DBPEDIA"));
-                    }
-                }
+                LOGGER.info("Loading dates file");
+                BirthYearIndex birthDates = BirthYearIndex.open(datesFile);
+                LOGGER.info("Dates loaded: {}", birthDates.size());
 
-                for (LinkedEntity linkedEntity : linkedEntities) {
-                    Span<Term> termSpan = KAFDocument.newTermSpan();
-                    for (WF wf : linkedEntity.getWFs().getTargets()) {
-                        if (!useSpotted || okWFs.contains(wf)) {
-                            termSpan.addTarget(termsMap.get(wf));
-                        }
-                    }
-                    Set<String> t = topics.get(linkedEntity.getReference());
-                    if (termSpan.size() > 0 && t != null && t.contains("Person")) {
-                        Term termsHead = document.getTermsHead(termSpan.getTargets());
-                        if (termsHead != null) {
-                            linkedEntityHashMultimap.put(termsHead, linkedEntity);
-                        }
-                    }
-                }
+                TypeRegistry persons = new TypeRegistry("Person", maxTypeSets);
+                CompactGraph.Builder graphBuilder = CompactGraph.builder();
 
-                for (Entity entity : document.getEntities()) {
-                    if (entity.getType().equals("PERSON")) {
-                        Term termsHead = document.getTermsHead(entity.getTerms());
-                        if (termsHead != null) {
-                            entityHashMultimap.put(termsHead, entity);
-                        }
-                    }
+                metrics.startPhase("parse");
+                LOGGER.info("Looping NAFs");
+                DocumentExtractor extractor = new DocumentExtractor(useCoref, useSpotted, useKaflib);
+                ExtractionCache cache = null;
+                if (cacheFolder != null) {
+                    cache = new ExtractionCache(cacheFolder, extractor.getSignature());
                 }
-
-                for (Coref coref : document.getCorefs()) {
-                    Set<Term> heads = new HashSet<>();
-                    for (Span<Term> termSpan : coref.getSpans()) {
-                        Term termsHead = document.getTermsHead(termSpan.getTargets());
-                        if (termsHead != null) {
-                            heads.add(termsHead);
-                        }
+                NafPipeline pipeline = new NafPipeline(extractor, threads, cache);
+                NafInput nafInput = NafInput.open(input);
+                pipeline.run(nafInput, (name, document) -> {
+                    metrics.increment("documents");
+                    metrics.add("sentences", document.getSentences().size());
+
+                    // Types are collected before filtering, as they may come from the document itself
+                    for (Map.Entry<String, Set<String>> entry : document.getTypes().entrySet()) {
+                        persons.add(entry.getKey(), entry.getValue());
                     }
-                    for (Term head : heads) {
-                        corefHashMultimap.putAll(head, heads);
-                    }
-
-                }
 
-                for (int i = 0; i < document.getNumSentences(); i++) {
-                    int sentNo = i + 1;
-                    List<Term> termsBySent = document.getTermsBySent(sentNo);
-
-                    HashMultimap<Entity, LinkedEntity> entities = HashMultimap.create();
-
-                    for (Term term : termsBySent) {
-                        Set<Entity> entTerm = entityHashMultimap.get(term);
-                        Set<Term> corefTerms = corefHashMultimap.get(term);
-
-                        if (entTerm != null && entTerm.size() > 0) {
-                            for (Entity entity : entTerm) {
-                                LinkedEntity bestChoice = getBest(term, linkedEntityHashMultimap, birthDates,
-                                        maxBirthYear, skipped);
-                                entities.put(entity, bestChoice);
-                            }
-                        } else if (corefTerms.size() > 0 && useCoref) {
-                            for (Term corefTerm : corefTerms) {
-                                if (corefTerm.equals(term)) {
-                                    continue;
-                                }
-                                Set<Entity> corefEntities = entityHashMultimap.get(corefTerm);
-                                for (Entity corefEntity : corefEntities) {
-                                    LinkedEntity corefBestChoice = getBest(corefTerm, linkedEntityHashMultimap,
-                                            birthDates, maxBirthYear, skipped);
-                                    entities.put(corefEntity, corefBestChoice);
-                                }
-                            }
+                    for (List<Mention> mentions : document.getSentences()) {
+                        if (mentions.isEmpty()) {
+                            continue;
                         }
-                    }
 
-                    if (entities.size() > 0) {
-                        HashSet<String> clusterInThisSentence = new HashSet<>();
+                        HashSet<Integer> clusterInThisSentence = new HashSet<>();
+                        // Coreferences repeat the mentions of an entity: its link is counted once per sentence
+                        HashMultimap<Integer, String> linksInThisSentence = HashMultimap.create();
 
-                        for (Entity entity : entities.keySet()) {
-                            LOGGER.trace("ENT: {}", entity.getStr());
-                            String cluster = clusters.get(entity.getStr());
+                        for (Mention mention : mentions) {
+                            LOGGER.trace("ENT: {}", mention.getStr());
+                            String cluster = clusters.get(mention.getStr());
                             if (cluster == null) {
-                                cluster = entity.getStr();
+                                cluster = mention.getStr();
                             }
 
-                            clusterInThisSentence.add(cluster);
-                            graph.addVertex(cluster);
+                            clusterInThisSentence.add(graphBuilder.addVertex(cluster));
 
                             LOGGER.trace("CLUSTER: {}", cluster);
-                            Set<LinkedEntity> entitySet = entities.get(entity);
-                            for (LinkedEntity linkedEntity : entitySet) {
-                                if (linkedEntity != null) {
-                                    if (linksForClusters.get(cluster) == null) {
-                                        linksForClusters.put(cluster, new HashMap<>());
-                                    }
-                                    linksForClusters.get(cluster)
-                                            .put(linkedEntity.getReference(), linkedEntity.getConfidence());
-                                    LOGGER.trace("LINK: {}", linkedEntity.getReference());
-                                }
+                            Candidate linkedEntity = getBest(mention.getCandidates(), persons, birthDates,
+                                    maxBirthYear, skipped);
+                            if (linkedEntity != null && linksInThisSentence.put(mention.getEntity(),
+                                    linkedEntity.getReference())) {
+                                linksForClusters.add(cluster, linkedEntity.getReference(), linkedEntity.getConfidence());
+                                LOGGER.trace("LINK: {}", linkedEntity.getReference());
                             }
                         }
 
-                        for (String c1 : clusterInThisSentence) {
-                            for (String c2 : clusterInThisSentence) {
-                                if (c1.equals(c2)) {
+                        // Each pair is counted once per sentence
+                        for (Integer c1 : clusterInThisSentence) {
+                            for (Integer c2 : clusterInThisSentence) {
+                                if (c1 >= c2) {
                                     continue;
                                 }
 
-                                graph.addEdge(c1, c2);
+                                graphBuilder.addEdge(c1, c2);
                             }
 
                         }
-
                     }
+                    metrics.set("vertices", graphBuilder.getVertexCount());
+                    metrics.set("edges", graphBuilder.getEdgeCount());
+                });
+                nafInput.close();
+
+                LOGGER.info("Pages of persons: {}", persons.size());
+                LOGGER.info("Distinct type sets: {}", persons.getTypeSetCount());
+                if (cache != null) {
+                    LOGGER.info("Documents read from cache: {}", cache.getHits());
+                    LOGGER.info("Documents parsed: {}", cache.getMisses());
+                }
+                metrics.startPhase("build");
+                weightedGraph = graphBuilder.build();
+
+                if (saveGraphFile != null) {
+                    metrics.startPhase("write");
+                    LOGGER.info("Saving graph");
+                    new GraphSnapshot(weightedGraph, linksForClusters).write(saveGraphFile);
                 }
             }
+            LOGGER.info("Vertices: {}", weightedGraph.getVertexCount());
+            LOGGER.info("Edges: {}", weightedGraph.getEdgeCount());
+            LOGGER.info("Links: {}", linksForClusters.size());
+            metrics.set("vertices", weightedGraph.getVertexCount());
+            metrics.set("edges", weightedGraph.getEdgeCount());
+
+            metrics.startPhase("write");
 
             if (outputLinksFile != null) {
                 LOGGER.info("Writing links");
                 BufferedWriter linkWriter = new BufferedWriter(new FileWriter(outputLinksFile));
-                for (String cluster : linksForClusters.keySet()) {
-                    Map<String, Double> linkedEntities = linksForClusters.get(cluster);
-                    linkedEntities = sortByValue(linkedEntities);
+                for (String cluster : linksForClusters.getClusters()) {
                     linkWriter.append(cluster);
-                    for (String page : linkedEntities.keySet()) {
-                        linkWriter.append('\t').append(page);
+                    for (LinkStatistics.Link link : linksForClusters.getLinks(cluster)) {
+                        linkWriter.append('\t').append(link.getPage());
                     }
                     linkWriter.append('\n');
                 }
                 linkWriter.close();
             }
 
+            if (outputLinkStatsFile != null) {
+                LOGGER.info("Writing link statistics");
+                BufferedWriter statsWriter = new BufferedWriter(new FileWriter(outputLinkStatsFile));
+                for (String cluster : linksForClusters.getClusters()) {
+                    for (LinkStatistics.Link link : linksForClusters.getLinks(cluster)) {
+                        statsWriter.append(cluster).append('\t').append(link.getPage())
+                                .append('\t').append(Integer.toString(link.getCount()))
+                                .append('\t').append(Integer.toString(link.getError()))
+                                .append('\t').append(Double.toString(link.getMean()))
+                                .append('\t').append(Double.toString(link.getMax())).append('\n');
+                    }
+                }
+                statsWriter.close();
+            }
+
+            if (outputEdgesFile != null) {
+                LOGGER.info("Writing edges");
+                BufferedWriter edgeWriter = new BufferedWriter(new FileWriter(outputEdgesFile));
+                for (int v = 0; v < weightedGraph.getVertexCount(); v++) {
+                    for (int i = 0; i < weightedGraph.getDegree(v); i++) {
+                        int u = weightedGraph.getNeighbor(v, i);
+                        if (u > v) {
+                            edgeWriter.append(weightedGraph.getName(v)).append('\t').append(weightedGraph.getName(u))
+                                    .append('\t').append(Integer.toString(weightedGraph.getWeight(v, i))).append('\n');
+                        }
+                    }
+                }
+                edgeWriter.close();
+            }
+
+            metrics.startPhase("cliques");
             LOGGER.info("Finding cliques");
-            NeighborIndex neighborIndex = new NeighborIndex(graph);
+            CompactGraph fullGraph = weightedGraph.filterEdges(minEdgeWeight);
+            LOGGER.info("Edges with weight at least {}: {}", minEdgeWeight, fullGraph.getEdgeCount());
+            LOGGER.info("Edges below the threshold: {}", weightedGraph.getEdgeCount() - fullGraph.getEdgeCount());
+            weightedGraph = null;
+
+            // Vertices outside the (minCliqueSize - 1)-core cannot be in any reported clique
+            CompactGraph graph = fullGraph.kCore(minCliqueSize - 1);
+            LOGGER.info("Removed {} vertices and {} edges outside the {}-core", new Object[] {
+                    fullGraph.getVertexCount() - graph.getVertexCount(),
+                    fullGraph.getEdgeCount() - graph.getEdgeCount(), minCliqueSize - 1 });
+            fullGraph = null;
 
             BufferedWriter writer = null;
             if (outputFile != null) {
@@ -320,59 +357,62 @@ public class ExtractGraph {
 
             FrequencyHashSet<Integer> cliqueStats = new FrequencyHashSet<>();
             FrequencyHashSet<Integer> cliqueAddedStats = new FrequencyHashSet<>();
+            AtomicInteger nCliques = new AtomicInteger(0);
+            AtomicInteger modifiedCliques = new AtomicInteger(0);
+            AtomicInteger addedPersons = new AtomicInteger(0);
+
+            LOGGER.info("Graph size: {}", graph.getEdgeCount());
+            CliqueFinder cliqueFinder;
+            if (topK != null) {
+                cliqueFinder = new TopCliqueFinder(graph, topK, threads);
+            } else if (useJGraphT) {
+                cliqueFinder = new ComponentCliqueFinder(graph, threads,
+                        (component, componentThreads) -> new JGraphTCliqueFinder(component));
+            } else {
+                cliqueFinder = new ComponentCliqueFinder(graph, threads, PivotCliqueFinder::new);
+            }
 
-            int nCliques = 0;
-            LOGGER.info("Graph size: {}", graph.edgeSet().size());
-            BronKerboschCliqueFinder<String, DefaultEdge> cliqueFinder = new BronKerboschCliqueFinder<>(graph);
-            Collection<Set<String>> cliques = cliqueFinder.getAllMaximalCliques();
-
-            for (Set<String> clique : cliques) {
-                int size = clique.size();
-                if (size >= minCliqueSize) {
-
-                    // Consider also almost-cliques
-                    if (useAlmostCliques && size >= minCliqueSizeForAlmost) {
-                        FrequencyHashSet<String> neighbors = new FrequencyHashSet<>();
-
-                        LOGGER.debug("Clique: {}", clique);
-
-                        for (String s : clique) {
-                            for (Object neighbor : neighborIndex.neighborsOf(s)) {
-                                String n = (String) neighbor;
-                                if (!clique.contains(n)) {
-                                    neighbors.add(n);
-                                }
-                            }
-                        }
+            // Almost-cliques are expanded in the visitor, so they run on the clique search threads
+            AlmostCliqueExpander expander = useAlmostCliques ? new AlmostCliqueExpander(graph) : null;
+            final BufferedWriter cliqueWriter = writer;
+            cliqueFinder.findCliques(minCliqueSize, clique -> {
+                int size = clique.length;
+                int[] added = new int[0];
 
-                        for (String s : neighbors.keySet()) {
-                            if (neighbors.get(s) == size - 1) {
-                                LOGGER.debug("Added {}", s);
-                                LOGGER.debug("Neighbors of {}: {}", s, neighborIndex.neighborsOf(s));
-                                clique.add(s);
-                            }
-                        }
-
-                        if (clique.size() != size) {
-                            modifiedCliques++;
-                            addedPersons += clique.size() - size;
-                        }
+                // Consider also almost-cliques
+                if (expander != null && size >= minCliqueSizeForAlmost) {
+                    added = expander.expand(clique);
 
+                    if (LOGGER.isDebugEnabled()) {
+                        LOGGER.debug("Clique: {}", toNames(graph, clique));
+                        LOGGER.debug("Added {}", toNames(graph, added));
                     }
 
-                    cliqueStats.add(size);
-                    cliqueAddedStats.add(clique.size());
-                    StringBuffer row = new StringBuffer();
-                    for (String c : clique) {
-                        row.append(c).append('\t');
+                    if (added.length > 0) {
+                        modifiedCliques.incrementAndGet();
+                        addedPersons.addAndGet(added.length);
                     }
+                }
 
-                    if (writer != null) {
-                        writer.append(row.toString().trim()).append('\n');
+                StringBuilder row = new StringBuilder();
+                for (int c : clique) {
+                    row.append(graph.getName(c)).append('\t');
+                }
+                for (int c : added) {
+                    row.append(graph.getName(c)).append('\t');
+                }
+
+                // The visitor may be called by several threads
+                synchronized (cliqueStats) {
+                    cliqueStats.add(size);
+                    cliqueAddedStats.add(size + added.length);
+                    if (cliqueWriter != null) {
+                        cliqueWriter.append(row.toString().trim()).append('\n');
                     }
-                    nCliques++;
+                    nCliques.incrementAndGet();
                 }
-            }
+                metrics.increment("cliques");
+            });
 
             if (writer != null) {
                 writer.close();
@@ -385,7 +425,10 @@ public class ExtractGraph {
             LOGGER.info("Clique stats (new): {}", cliqueAddedStats);
             LOGGER.info("Modified cliques: {}", modifiedCliques);
 
-//            LOGGER.info(neighborIndex.neighborsOf("Nixon").toString());
+            metrics.close();
+            if (metricsFile != null) {
+                metrics.write(metricsFile);
+            }
 
 //            BufferedWriter writer = new BufferedWriter(new FileWriter(outputFile));
 //            for (String name : list) {
@@ -399,17 +442,22 @@ public class ExtractGraph {
 
     }
 
-    private static LinkedEntity getBest(Term term, HashMultimap<Term, LinkedEntity> linkedEntityHashMultimap,
-            HashMap<String, Integer> birthDates, Integer maxBirthYear, AtomicInteger skipped) {
-        Map<LinkedEntity, Double> entitiesForThisTerm = new HashMap<>();
-        for (LinkedEntity linkedEntity : linkedEntityHashMultimap.get(term)) {
-            entitiesForThisTerm.put(linkedEntity, linkedEntity.getConfidence());
+    /**
+     * Choose the most confident link to a person that is not too young, among the candidates of a mention.
+     */
+    private static Candidate getBest(List<Candidate> candidates, TypeRegistry persons,
+            BirthYearIndex birthDates, int maxBirthYear, AtomicInteger skipped) {
+        Map<Candidate, Double> entitiesForThisTerm = new LinkedHashMap<>();
+        for (Candidate candidate : candidates) {
+            if (persons.contains(candidate.getReference())) {
+                entitiesForThisTerm.put(candidate, candidate.getConfidence());
+            }
         }
         entitiesForThisTerm = sortByValue(entitiesForThisTerm);
-        LinkedEntity bestChoice = null;
-        for (LinkedEntity linkedEntity : entitiesForThisTerm.keySet()) {
-            Integer birthYear = birthDates.get(linkedEntity.getReference());
-            if (birthYear != null && birthYear > maxBirthYear) {
+        Candidate bestChoice = null;
+        for (Candidate linkedEntity : entitiesForThisTerm.keySet()) {
+            int birthYear = birthDates.get(linkedEntity.getReference());
+            if (birthYear != BirthYearIndex.NONE && birthYear > maxBirthYear) {
                 LOGGER.trace("Skipping " + linkedEntity.getReference() + ", too young");
                 skipped.incrementAndGet();
                 continue;
@@ -421,6 +469,14 @@ public class ExtractGraph {
         return bestChoice;
     }
 
+    private static List<String> toNames(CompactGraph graph, int[] vertices) {
+        List<String> names = new ArrayList<>();
+        for (int v : vertices) {
+            names.add(graph.getName(v));
+        }
+        return names;
+    }
+
     public static void printMap(Map map) {
         printMap(map, 0);
     }
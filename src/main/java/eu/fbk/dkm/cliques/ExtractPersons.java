@@ -1,19 +1,17 @@
 package eu.fbk.dkm.cliques;
 
+import eu.fbk.dkm.cliques.naf.NafInput;
 import eu.fbk.utils.core.CommandLine;
 import ixa.kaflib.Entity;
 import ixa.kaflib.KAFDocument;
 import ixa.kaflib.Span;
 import ixa.kaflib.Term;
-import org.apache.commons.io.FileUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
-import java.util.zip.GZIPInputStream;
 
 /**
  * Created by alessio on 15/01/16.
@@ -30,21 +28,23 @@ public class ExtractPersons {
                     .withName("./extract-persons")
                     .withHeader(
                             "Extract person names in a NAF set of files")
-                    .withOption("i", "input", "Input folder", "FILE", CommandLine.Type.DIRECTORY_EXISTING, true, false,
-                            true)
+                    .withOption("i", "input", "Input folder, or tar, tar.gz or zip archive of NAFs", "FILE",
+                            CommandLine.Type.FILE, true, false, true)
                     .withOption("o", "output", "Output file", "FILE", CommandLine.Type.FILE, true, false, true)
                     .withLogger(LoggerFactory.getLogger("eu.fbk")).parse(args);
 
-            File inputFolder = cmd.getOptionValue("input", File.class);
+            File input = cmd.getOptionValue("input", File.class);
             File outputFile = cmd.getOptionValue("output", File.class);
+            if (!input.exists()) {
+                throw new CommandLine.Exception("Input " + input + " does not exist");
+            }
 
             ArrayList<String> list = new ArrayList<String>();
 
-            Iterator<File> fileIterator = FileUtils.iterateFiles(inputFolder, new String[] { "naf.gz" }, true);
-            while (fileIterator.hasNext()) {
-                File file = fileIterator.next();
-                GZIPInputStream gis = new GZIPInputStream(new FileInputStream(file));
-                KAFDocument document = KAFDocument.createFromStream(new InputStreamReader(gis, "UTF-8"));
+            NafInput nafInput = NafInput.open(input);
+            NafInput.Entry entry;
+            while ((entry = nafInput.next()) != null) {
+                KAFDocument document = KAFDocument.createFromStream(entry.openReader());
 
                 List<Entity> entities = document.getEntities();
                 for (Entity entity : entities) {
@@ -60,6 +60,7 @@ public class ExtractPersons {
                     }
                 }
             }
+            nafInput.close();
 
             BufferedWriter writer = new BufferedWriter(new FileWriter(outputFile));
             for (String name : list) {
@@ -0,0 +1,41 @@
+package eu.fbk.dkm.cliques;
+
+import eu.fbk.dkm.cliques.util.BirthYearIndex;
+import eu.fbk.utils.core.CommandLine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+
+/**
+ * Builds the index of the years of birth used by {@link ExtractGraph}, from the Wikidata dates file.
+ */
+
+public class IndexDates {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(IndexDates.class);
+
+    public static void main(String[] args) {
+        try {
+            final CommandLine cmd = CommandLine
+                    .parser()
+                    .withName("./index-dates")
+                    .withHeader(
+                            "Build the index of the years of birth of DBpedia pages")
+                    .withOption("d", "dates", "List of dates", "FILE", CommandLine.Type.FILE_EXISTING, true, false,
+                            true)
+                    .withOption("o", "output", "Output file", "FILE", CommandLine.Type.FILE, true, false, true)
+                    .withLogger(LoggerFactory.getLogger("eu.fbk")).parse(args);
+
+            File datesFile = cmd.getOptionValue("dates", File.class);
+            File outputFile = cmd.getOptionValue("output", File.class);
+
+            LOGGER.info("Indexing dates");
+            int size = BirthYearIndex.write(datesFile, outputFile);
+            LOGGER.info("Pages indexed: {}", size);
+
+        } catch (Exception e) {
+            CommandLine.fail(e);
+        }
+    }
+}
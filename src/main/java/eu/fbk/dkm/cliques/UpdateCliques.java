@@ -0,0 +1,203 @@
+package eu.fbk.dkm.cliques;
+
+import eu.fbk.dkm.cliques.graph.IncrementalCliqueIndex;
+import eu.fbk.dkm.cliques.util.LongIntHashMap;
+import eu.fbk.utils.core.CommandLine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Updates the cliques of a co-occurrence graph with new co-occurrences, writing the cliques added and removed.
+ * <p>
+ * Graphs are edge lists with lines "name1,name2,weight" (as written by {@link ExtractCoOccurrences}) or
+ * tab-separated (as written by {@link ExtractGraph} with --output-edges); weights of repeated pairs are summed. The
+ * cliques of the old graph are read from a previous run with the same thresholds, or enumerated if not given or if
+ * some of them are not maximal cliques of the old graph.
+ */
+
+public class UpdateCliques {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(UpdateCliques.class);
+    private static final Integer DEFAULT_MIN_CLIQUE_SIZE = 3;
+    private static final Integer DEFAULT_MIN_EDGE_WEIGHT = 2;
+    private static final Integer DEFAULT_THREADS = 1;
+
+    public static void main(String[] args) {
+        try {
+            final CommandLine cmd = CommandLine
+                    .parser()
+                    .withName("./update-cliques")
+                    .withHeader(
+                            "Update the cliques of a graph with new edges")
+                    .withOption("g", "graph", "Input file with the edges of the old graph", "FILE",
+                            CommandLine.Type.FILE_EXISTING, true, false, true)
+                    .withOption("c", "cliques", "Input file with all the maximal cliques of the old graph, "
+                                    + "found with the same min edge weight and min clique size, without --use-almost "
+                                    + "or --top-k (computed if missing or not matching the graph)",
+                            "FILE", CommandLine.Type.FILE_EXISTING, true, false, false)
+                    .withOption("n", "new-edges", "Input file with the new edges", "FILE",
+                            CommandLine.Type.FILE_EXISTING, true, false, true)
+                    .withOption("a", "output-added", "Output file for the cliques added", "FILE",
+                            CommandLine.Type.FILE, true, false, true)
+                    .withOption("r", "output-removed", "Output file for the cliques removed", "FILE",
+                            CommandLine.Type.FILE, true, false, true)
+                    .withOption(null, "output-cliques", "Output file for all the cliques of the new graph", "FILE",
+                            CommandLine.Type.FILE, true, false, false)
+                    .withOption(null, "output-graph", "Output file for the edges of the new graph", "FILE",
+                            CommandLine.Type.FILE, true, false, false)
+                    .withOption(null, "min-clique-size",
+                            String.format("Min size for a clique (default %d)", DEFAULT_MIN_CLIQUE_SIZE), "value",
+                            CommandLine.Type.INTEGER, true, false, false)
+                    .withOption(null, "min-edge-weight",
+                            String.format("Min weight for an edge, the same used for --cliques (default %d)",
+                                    DEFAULT_MIN_EDGE_WEIGHT), "value",
+                            CommandLine.Type.INTEGER, true, false, false)
+                    .withOption(null, "threads",
+                            String.format("Number of threads for the clique search (default %d)", DEFAULT_THREADS),
+                            "value", CommandLine.Type.POSITIVE_INTEGER, true, false, false)
+                    .withLogger(LoggerFactory.getLogger("eu.fbk")).parse(args);
+
+            File graphFile = cmd.getOptionValue("graph", File.class);
+            File cliquesFile = cmd.getOptionValue("cliques", File.class);
+            File newEdgesFile = cmd.getOptionValue("new-edges", File.class);
+            File addedFile = cmd.getOptionValue("output-added", File.class);
+            File removedFile = cmd.getOptionValue("output-removed", File.class);
+            File outputCliquesFile = cmd.getOptionValue("output-cliques", File.class);
+            File outputGraphFile = cmd.getOptionValue("output-graph", File.class);
+            Integer minCliqueSize = cmd.getOptionValue("min-clique-size", Integer.class, DEFAULT_MIN_CLIQUE_SIZE);
+            Integer minEdgeWeight = cmd.getOptionValue("min-edge-weight", Integer.class, DEFAULT_MIN_EDGE_WEIGHT);
+            Integer threads = cmd.getOptionValue("threads", Integer.class, DEFAULT_THREADS);
+
+            IncrementalCliqueIndex index = new IncrementalCliqueIndex(minCliqueSize);
+            LongIntHashMap weights = new LongIntHashMap();
+
+            LOGGER.info("Loading graph");
+            readEdges(graphFile, index, weights, minEdgeWeight, null);
+
+            boolean loaded = cliquesFile != null;
+            if (cliquesFile != null) {
+                LOGGER.info("Loading cliques");
+                try (BufferedReader reader = new BufferedReader(new FileReader(cliquesFile))) {
+                    String line;
+                    while (loaded && (line = reader.readLine()) != null) {
+                        line = line.trim();
+                        if (line.length() == 0) {
+                            continue;
+                        }
+                        String[] parts = line.split("\t");
+                        int[] clique = new int[parts.length];
+                        for (int i = 0; i < parts.length; i++) {
+                            clique[i] = index.addVertex(parts[i]);
+                        }
+                        if (!index.loadClique(clique)) {
+                            LOGGER.warn("Not a maximal clique of the graph (check --min-edge-weight): {}", line);
+                            loaded = false;
+                        }
+                    }
+                }
+            }
+            if (!loaded) {
+                LOGGER.info("Finding cliques");
+                index.computeCliques(threads);
+            }
+            LOGGER.info("Cliques in the old graph: {}", index.getCliqueCount());
+
+            LOGGER.info("Adding new edges");
+            IncrementalCliqueIndex.Delta delta = new IncrementalCliqueIndex.Delta();
+            int added = readEdges(newEdgesFile, index, weights, minEdgeWeight, delta);
+            LOGGER.info("Edges added: {}", added);
+            LOGGER.info("Cliques added: {}", delta.getAdded().size());
+            LOGGER.info("Cliques removed: {}", delta.getRemoved().size());
+            LOGGER.info("Cliques in the new graph: {}", index.getCliqueCount());
+
+            writeCliques(addedFile, index, delta.getAdded());
+            writeCliques(removedFile, index, delta.getRemoved());
+            if (outputCliquesFile != null) {
+                writeCliques(outputCliquesFile, index, index.getCliques());
+            }
+
+            if (outputGraphFile != null) {
+                try (BufferedWriter writer = new BufferedWriter(new FileWriter(outputGraphFile))) {
+                    IOException[] error = new IOException[1];
+                    weights.forEach((edge, weight) -> {
+                        try {
+                            writer.append(index.getName(LongIntHashMap.high(edge))).append('\t');
+                            writer.append(index.getName(LongIntHashMap.low(edge))).append('\t');
+                            writer.append(Integer.toString(weight)).append('\n');
+                        } catch (IOException e) {
+                            error[0] = e;
+                        }
+                    });
+                    if (error[0] != null) {
+                        throw error[0];
+                    }
+                }
+            }
+
+        } catch (Exception e) {
+            CommandLine.fail(e);
+        }
+    }
+
+    /**
+     * Read an edge list, summing its weights to the ones already seen; edges reaching the min weight are added to
+     * the index, updating the cliques if a delta is given.
+     *
+     * @return the number of edges added to the index
+     */
+    private static int readEdges(File file, IncrementalCliqueIndex index, LongIntHashMap weights, int minEdgeWeight,
+            IncrementalCliqueIndex.Delta delta) throws IOException {
+        int added = 0;
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.length() == 0) {
+                    continue;
+                }
+                String[] parts = line.split(line.indexOf('\t') >= 0 ? "\t" : ",");
+                if (parts.length < 3) {
+                    continue;
+                }
+
+                int u = index.addVertex(parts[0]);
+                int v = index.addVertex(parts[1]);
+                if (u == v) {
+                    continue;
+                }
+                int weight = weights.add(LongIntHashMap.pack(Math.min(u, v), Math.max(u, v)),
+                        Integer.parseInt(parts[2]));
+                if (weight < minEdgeWeight) {
+                    continue;
+                }
+
+                boolean isNew = delta != null ? index.addEdge(u, v, delta) : index.loadEdge(u, v);
+                if (isNew) {
+                    added++;
+                }
+            }
+        }
+        return added;
+    }
+
+    private static void writeCliques(File file, IncrementalCliqueIndex index, List<int[]> cliques)
+            throws IOException {
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(file))) {
+            for (int[] clique : cliques) {
+                StringBuilder row = new StringBuilder();
+                for (int v : clique) {
+                    row.append(index.getName(v)).append('\t');
+                }
+                writer.append(row.toString().trim()).append('\n');
+            }
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package eu.fbk.dkm.cliques.graph;
+
+import java.util.Arrays;
+
+/**
+ * Finds the vertices adjacent to all the members of a clique but one, so that almost-cliques can be merged into it.
+ * <p>
+ * The neighborhoods of the members are scanned once, counting for every outside neighbor how many members it is
+ * adjacent to. The counts live in per-thread scratch arrays indexed by vertex and only the vertices touched are
+ * cleared after each clique, so cliques can be expanded concurrently without allocating per clique.
+ */
+
+public class AlmostCliqueExpander {
+
+    private final CompactGraph graph;
+    private final ThreadLocal<Scratch> scratch;
+
+    public AlmostCliqueExpander(CompactGraph graph) {
+        this.graph = graph;
+        this.scratch = ThreadLocal.withInitial(() -> new Scratch(graph.getVertexCount()));
+    }
+
+    /**
+     * Find the vertices outside the clique that are adjacent to exactly {@code clique.length - 1} of its members.
+     *
+     * @param clique The members of the clique
+     * @return the vertices to add, possibly none
+     */
+    public int[] expand(int[] clique) {
+        Scratch s = scratch.get();
+        int size = clique.length;
+        for (int c : clique) {
+            s.member[c] = true;
+        }
+
+        int touched = 0;
+        for (int c : clique) {
+            for (int i = 0; i < graph.getDegree(c); i++) {
+                int u = graph.getNeighbor(c, i);
+                if (s.member[u]) {
+                    continue;
+                }
+                if (s.counts[u]++ == 0) {
+                    s.touched[touched++] = u;
+                }
+            }
+        }
+
+        int[] added = new int[touched];
+        int addedSize = 0;
+        for (int i = 0; i < touched; i++) {
+            int u = s.touched[i];
+            if (s.counts[u] == size - 1) {
+                added[addedSize++] = u;
+            }
+            s.counts[u] = 0;
+        }
+        for (int c : clique) {
+            s.member[c] = false;
+        }
+
+        return Arrays.copyOf(added, addedSize);
+    }
+
+    private static class Scratch {
+
+        final boolean[] member;
+        final int[] counts;
+        final int[] touched;
+
+        Scratch(int n) {
+            member = new boolean[n];
+            counts = new int[n];
+            touched = new int[n];
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package eu.fbk.dkm.cliques.graph;
+
+import java.io.IOException;
+
+/**
+ * Enumerates the maximal cliques of a {@link CompactGraph}.
+ */
+
+public interface CliqueFinder {
+
+    /**
+     * Find the maximal cliques of the graph, passing each one to the visitor as soon as it is found. Cliques are not
+     * kept in memory by the finder.
+     *
+     * @param minSize Minimum size of the reported cliques, also used to prune the search
+     * @param visitor The callback receiving the cliques, each one as a new array of vertex ids
+     * @throws IOException if the visitor fails
+     */
+    void findCliques(int minSize, CliqueVisitor visitor) throws IOException;
+
+}
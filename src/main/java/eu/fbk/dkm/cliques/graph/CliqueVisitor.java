@@ -0,0 +1,14 @@
+package eu.fbk.dkm.cliques.graph;
+
+import java.io.IOException;
+
+/**
+ * Callback receiving the cliques found by a {@link CliqueFinder}. When the finder runs on more than one thread, the
+ * visitor is called concurrently and must be thread-safe.
+ */
+
+public interface CliqueVisitor {
+
+    void visit(int[] clique) throws IOException;
+
+}
@@ -0,0 +1,372 @@
+package eu.fbk.dkm.cliques.graph;
+
+import eu.fbk.dkm.cliques.util.LongIntHashMap;
+
+import java.util.*;
+
+/**
+ * Immutable undirected graph on integer vertex ids, with adjacency stored in CSR form (one sorted array of
+ * neighbors, indexed by an array of offsets). Vertices are created by a {@link Builder}, that interns their names;
+ * names are only needed again when cliques are written. Each edge carries an integer weight, usually the number of
+ * co-occurrences of its endpoints.
+ * <p>
+ * Vertices whose degree is a sizeable fraction of the graph (at least one in {@value #DENSE_ROW_RATIO}) also get a
+ * bitset row, so that adjacency tests on hubs take constant time; such a row is never larger than the CSR one.
+ */
+
+public class CompactGraph {
+
+    private static final int DENSE_ROW_RATIO = 32;
+    private static final int DENSE_ROW_MIN_DEGREE = 256;
+
+    private final String[] names;
+    private final int[] offsets;
+    private final int[] targets;
+    private final int[] weights;
+    private final long[][] denseRows;
+
+    CompactGraph(String[] names, int[] offsets, int[] targets, int[] weights) {
+        this.names = names;
+        this.offsets = offsets;
+        this.targets = targets;
+        this.weights = weights;
+
+        int n = names.length;
+        this.denseRows = new long[n][];
+        for (int v = 0; v < n; v++) {
+            int degree = getDegree(v);
+            if (degree >= DENSE_ROW_MIN_DEGREE && (long) degree * DENSE_ROW_RATIO >= n) {
+                long[] row = new long[(n + 63) >>> 6];
+                for (int i = offsets[v]; i < offsets[v + 1]; i++) {
+                    row[targets[i] >>> 6] |= 1L << targets[i];
+                }
+                denseRows[v] = row;
+            }
+        }
+    }
+
+    public int getVertexCount() {
+        return names.length;
+    }
+
+    public int getEdgeCount() {
+        return targets.length / 2;
+    }
+
+    public String getName(int v) {
+        return names[v];
+    }
+
+    public int getDegree(int v) {
+        return offsets[v + 1] - offsets[v];
+    }
+
+    /**
+     * Get the i-th neighbor of a vertex; neighbors are sorted by id.
+     */
+    public int getNeighbor(int v, int i) {
+        return targets[offsets[v] + i];
+    }
+
+    /**
+     * Get the weight of the edge to the i-th neighbor of a vertex.
+     */
+    public int getWeight(int v, int i) {
+        return weights[offsets[v] + i];
+    }
+
+    public int[] getNeighbors(int v) {
+        return Arrays.copyOfRange(targets, offsets[v], offsets[v + 1]);
+    }
+
+    public boolean isAdjacent(int u, int v) {
+        if (denseRows[u] != null) {
+            return (denseRows[u][v >>> 6] & (1L << v)) != 0;
+        }
+        if (denseRows[v] != null) {
+            return (denseRows[v][u >>> 6] & (1L << u)) != 0;
+        }
+        if (getDegree(u) > getDegree(v)) {
+            return Arrays.binarySearch(targets, offsets[v], offsets[v + 1], u) >= 0;
+        }
+        return Arrays.binarySearch(targets, offsets[u], offsets[u + 1], v) >= 0;
+    }
+
+    /**
+     * Order the vertices by repeatedly removing one of minimum degree (Batagelj and Zaversnik, linear time).
+     *
+     * @return the vertices in degeneracy order
+     */
+    public int[] degeneracyOrder() {
+        int[] order = new int[names.length];
+        peel(order, new int[names.length]);
+        return order;
+    }
+
+    /**
+     * Get the core number of each vertex, i.e. the largest k such that the vertex is in the k-core.
+     */
+    public int[] coreNumbers() {
+        int[] core = new int[names.length];
+        peel(new int[names.length], core);
+        return core;
+    }
+
+    /**
+     * Get the k-core of the graph, i.e. its largest subgraph where every vertex has degree at least k. No clique with
+     * more than k vertices is lost, and cliques of that size that are maximal in the k-core are maximal here too.
+     * Vertices get new ids, in the same relative order; names and weights are kept.
+     */
+    public CompactGraph kCore(int k) {
+        int n = names.length;
+        int[] core = coreNumbers();
+        int[] ids = new int[n];
+        int size = 0;
+        for (int v = 0; v < n; v++) {
+            ids[v] = core[v] >= k ? size++ : -1;
+        }
+        if (size == n) {
+            return this;
+        }
+
+        int[] vertices = new int[size];
+        for (int v = 0; v < n; v++) {
+            if (ids[v] >= 0) {
+                vertices[ids[v]] = v;
+            }
+        }
+        return subgraph(vertices, ids);
+    }
+
+    /**
+     * Get the graph without the edges lighter than a threshold. All vertices are kept, so ids stay valid.
+     */
+    public CompactGraph filterEdges(int minWeight) {
+        int n = names.length;
+        int[] newOffsets = new int[n + 1];
+        int[] newTargets = new int[targets.length];
+        int[] newWeights = new int[targets.length];
+        int k = 0;
+        for (int v = 0; v < n; v++) {
+            for (int i = offsets[v]; i < offsets[v + 1]; i++) {
+                if (weights[i] >= minWeight) {
+                    newWeights[k] = weights[i];
+                    newTargets[k++] = targets[i];
+                }
+            }
+            newOffsets[v + 1] = k;
+        }
+        if (k == targets.length) {
+            return this;
+        }
+        return new CompactGraph(names, newOffsets, Arrays.copyOf(newTargets, k), Arrays.copyOf(newWeights, k));
+    }
+
+    /**
+     * Get the subgraph induced by some vertices, that get new ids in the same relative order.
+     *
+     * @param vertices The vertices to keep, sorted by id
+     */
+    public CompactGraph subgraph(int[] vertices) {
+        int[] ids = new int[names.length];
+        Arrays.fill(ids, -1);
+        for (int i = 0; i < vertices.length; i++) {
+            ids[vertices[i]] = i;
+        }
+        return subgraph(vertices, ids);
+    }
+
+    /**
+     * Same as {@link #subgraph(int[])}, with the new id of every vertex already computed (-1 for the ones to drop).
+     * Only the entries of the kept vertices and of their neighbors are read, so for a connected component the array
+     * can be shared with the other components.
+     */
+    CompactGraph subgraph(int[] vertices, int[] ids) {
+        int size = vertices.length;
+        String[] newNames = new String[size];
+        int[] newOffsets = new int[size + 1];
+        for (int i = 0; i < size; i++) {
+            int v = vertices[i];
+            newNames[i] = names[v];
+            int degree = 0;
+            for (int j = offsets[v]; j < offsets[v + 1]; j++) {
+                if (ids[targets[j]] >= 0) {
+                    degree++;
+                }
+            }
+            newOffsets[i + 1] = newOffsets[i] + degree;
+        }
+
+        int[] newTargets = new int[newOffsets[size]];
+        int[] newWeights = new int[newOffsets[size]];
+        int k = 0;
+        for (int v : vertices) {
+            for (int j = offsets[v]; j < offsets[v + 1]; j++) {
+                if (ids[targets[j]] >= 0) {
+                    newWeights[k] = weights[j];
+                    newTargets[k++] = ids[targets[j]];
+                }
+            }
+        }
+
+        return new CompactGraph(newNames, newOffsets, newTargets, newWeights);
+    }
+
+    /**
+     * Fill the degeneracy order and the core numbers; the latter are the degrees left when vertices are removed.
+     */
+    private void peel(int[] order, int[] degree) {
+        int n = names.length;
+        int maxDegree = 0;
+        for (int v = 0; v < n; v++) {
+            degree[v] = getDegree(v);
+            maxDegree = Math.max(maxDegree, degree[v]);
+        }
+
+        int[] bin = new int[maxDegree + 1];
+        for (int v = 0; v < n; v++) {
+            bin[degree[v]]++;
+        }
+        int start = 0;
+        for (int d = 0; d <= maxDegree; d++) {
+            int num = bin[d];
+            bin[d] = start;
+            start += num;
+        }
+
+        int[] position = new int[n];
+        for (int v = 0; v < n; v++) {
+            position[v] = bin[degree[v]];
+            order[position[v]] = v;
+            bin[degree[v]]++;
+        }
+        for (int d = maxDegree; d > 0; d--) {
+            bin[d] = bin[d - 1];
+        }
+        bin[0] = 0;
+
+        for (int i = 0; i < n; i++) {
+            int v = order[i];
+            for (int j = offsets[v]; j < offsets[v + 1]; j++) {
+                int u = targets[j];
+                if (degree[u] > degree[v]) {
+                    int du = degree[u];
+                    int pu = position[u];
+                    int pw = bin[du];
+                    int w = order[pw];
+                    if (u != w) {
+                        position[u] = pw;
+                        order[pu] = w;
+                        position[w] = pu;
+                        order[pw] = u;
+                    }
+                    bin[du]++;
+                    degree[u]--;
+                }
+            }
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Collects vertices and weighted edges. Edge weights are accumulated in a primitive map keyed by the packed pair of
+     * ids, so repeated co-occurrences only increase a counter.
+     */
+    public static class Builder {
+
+        private final Map<String, Integer> ids = new HashMap<>();
+        private final List<String> names = new ArrayList<>();
+        private final LongIntHashMap edges = new LongIntHashMap();
+
+        private Builder() {
+        }
+
+        /**
+         * Add a vertex, if not already there.
+         *
+         * @return the id of the vertex
+         */
+        public int addVertex(String name) {
+            Integer id = ids.get(name);
+            if (id == null) {
+                id = names.size();
+                ids.put(name, id);
+                names.add(name);
+            }
+            return id;
+        }
+
+        public void addEdge(int u, int v) {
+            addEdge(u, v, 1);
+        }
+
+        /**
+         * Add an edge, or increase its weight if already there. Self-loops are ignored.
+         */
+        public void addEdge(int u, int v, int weight) {
+            if (u == v) {
+                return;
+            }
+            edges.add(LongIntHashMap.pack(Math.min(u, v), Math.max(u, v)), weight);
+        }
+
+        public int getVertexCount() {
+            return names.size();
+        }
+
+        public int getEdgeCount() {
+            return edges.size();
+        }
+
+        public CompactGraph build() {
+            return build(1);
+        }
+
+        /**
+         * Build the graph, leaving out the edges lighter than a threshold. All vertices are kept, so ids stay valid.
+         */
+        public CompactGraph build(int minWeight) {
+            long[] kept = new long[edges.size()];
+            int[] keptCount = new int[1];
+            edges.forEach((edge, weight) -> {
+                if (weight >= minWeight) {
+                    kept[keptCount[0]++] = edge;
+                }
+            });
+            int edgeCount = keptCount[0];
+            Arrays.sort(kept, 0, edgeCount);
+
+            int n = names.size();
+            int[] offsets = new int[n + 1];
+            for (int i = 0; i < edgeCount; i++) {
+                offsets[LongIntHashMap.high(kept[i]) + 1]++;
+                offsets[LongIntHashMap.low(kept[i]) + 1]++;
+            }
+            for (int v = 0; v < n; v++) {
+                offsets[v + 1] += offsets[v];
+            }
+
+            // Edges are sorted by (smaller, larger) id, so filling the rows in this order keeps them sorted
+            int[] targets = new int[edgeCount * 2];
+            int[] weights = new int[edgeCount * 2];
+            int[] fill = Arrays.copyOf(offsets, n);
+            for (int i = 0; i < edgeCount; i++) {
+                int u = LongIntHashMap.high(kept[i]);
+                int v = LongIntHashMap.low(kept[i]);
+                weights[fill[v]] = edges.get(kept[i]);
+                targets[fill[v]++] = u;
+            }
+            for (int i = 0; i < edgeCount; i++) {
+                int u = LongIntHashMap.high(kept[i]);
+                int v = LongIntHashMap.low(kept[i]);
+                weights[fill[u]] = edges.get(kept[i]);
+                targets[fill[u]++] = v;
+            }
+
+            return new CompactGraph(names.toArray(new String[n]), offsets, targets, weights);
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package eu.fbk.dkm.cliques.graph;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.BiFunction;
+
+/**
+ * Splits the graph into connected components (union-find over the edges) and enumerates the cliques of each one
+ * separately, since no clique spans two components. Components smaller than the minimum clique size are skipped.
+ * <p>
+ * Large components, typically the single giant one, are searched one at a time, each by a finder using all the
+ * threads. Small components are grouped into batches of about {@value #BATCH_SIZE} vertices, and batches are run in
+ * parallel with a single-threaded finder per component. Cliques are passed to the visitor with the ids of the whole
+ * graph.
+ */
+
+public class ComponentCliqueFinder implements CliqueFinder {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ComponentCliqueFinder.class);
+    private static final int LARGE_COMPONENT_SIZE = 5000;
+    private static final int BATCH_SIZE = 5000;
+
+    private final CompactGraph graph;
+    private final int threads;
+    private final BiFunction<CompactGraph, Integer, CliqueFinder> factory;
+
+    /**
+     * @param factory Creates the finder for a component, given the component and the number of threads
+     */
+    public ComponentCliqueFinder(CompactGraph graph, int threads,
+            BiFunction<CompactGraph, Integer, CliqueFinder> factory) {
+        this.graph = graph;
+        this.threads = threads;
+        this.factory = factory;
+    }
+
+    @Override
+    public void findCliques(int minSize, CliqueVisitor visitor) throws IOException {
+        int n = graph.getVertexCount();
+
+        int[] parent = new int[n];
+        int[] size = new int[n];
+        for (int v = 0; v < n; v++) {
+            parent[v] = v;
+            size[v] = 1;
+        }
+        for (int v = 0; v < n; v++) {
+            for (int i = 0; i < graph.getDegree(v); i++) {
+                int u = graph.getNeighbor(v, i);
+                if (u > v) {
+                    union(parent, size, u, v);
+                }
+            }
+        }
+
+        // Group the vertices by component, keeping them sorted by id; local ids are shared by all the components
+        int[] start = new int[n + 1];
+        for (int v = 0; v < n; v++) {
+            start[find(parent, v) + 1]++;
+        }
+        for (int v = 0; v < n; v++) {
+            start[v + 1] += start[v];
+        }
+        int[] members = new int[n];
+        int[] localIds = new int[n];
+        int[] fill = new int[n];
+        for (int v = 0; v < n; v++) {
+            int root = find(parent, v);
+            localIds[v] = fill[root];
+            members[start[root] + fill[root]++] = v;
+        }
+
+        List<Component> large = new ArrayList<>();
+        List<Component> small = new ArrayList<>();
+        int components = 0;
+        for (int root = 0; root < n; root++) {
+            int componentSize = start[root + 1] - start[root];
+            if (componentSize == 0) {
+                continue;
+            }
+            components++;
+            if (componentSize < minSize) {
+                continue;
+            }
+            Component component = new Component(members, start[root], start[root + 1]);
+            (componentSize >= LARGE_COMPONENT_SIZE ? large : small).add(component);
+        }
+        LOGGER.info("Components: {} ({} large, {} small with at least {} vertices)",
+                new Object[] { components, large.size(), small.size(), minSize });
+
+        for (Component component : large) {
+            component.solve(localIds, threads, minSize, visitor);
+        }
+
+        List<List<Component>> batches = new ArrayList<>();
+        List<Component> batch = new ArrayList<>();
+        int batchSize = 0;
+        for (Component component : small) {
+            batch.add(component);
+            batchSize += component.size();
+            if (batchSize >= BATCH_SIZE) {
+                batches.add(batch);
+                batch = new ArrayList<>();
+                batchSize = 0;
+            }
+        }
+        if (!batch.isEmpty()) {
+            batches.add(batch);
+        }
+
+        long time = System.currentTimeMillis();
+        if (threads > 1 && batches.size() > 1) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                pool.invoke(new BatchTask(batches, 0, batches.size(), localIds, minSize, visitor));
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            } finally {
+                pool.shutdown();
+            }
+        } else {
+            for (List<Component> b : batches) {
+                solve(b, localIds, minSize, visitor);
+            }
+        }
+        LOGGER.info("Small components: {} in {} batches, {} ms",
+                new Object[] { small.size(), batches.size(), System.currentTimeMillis() - time });
+    }
+
+    private void solve(List<Component> batch, int[] localIds, int minSize, CliqueVisitor visitor)
+            throws IOException {
+        for (Component component : batch) {
+            component.solve(localIds, 1, minSize, visitor);
+        }
+    }
+
+    private static int find(int[] parent, int v) {
+        while (parent[v] != v) {
+            parent[v] = parent[parent[v]];
+            v = parent[v];
+        }
+        return v;
+    }
+
+    private static void union(int[] parent, int[] size, int u, int v) {
+        u = find(parent, u);
+        v = find(parent, v);
+        if (u == v) {
+            return;
+        }
+        if (size[u] < size[v]) {
+            int t = u;
+            u = v;
+            v = t;
+        }
+        parent[v] = u;
+        size[u] += size[v];
+    }
+
+    private class Component {
+
+        private final int[] members;
+        private final int from, to;
+
+        Component(int[] members, int from, int to) {
+            this.members = members;
+            this.from = from;
+            this.to = to;
+        }
+
+        int size() {
+            return to - from;
+        }
+
+        void solve(int[] localIds, int threads, int minSize, CliqueVisitor visitor) throws IOException {
+            long time = System.currentTimeMillis();
+            int[] vertices = new int[to - from];
+            System.arraycopy(members, from, vertices, 0, vertices.length);
+            CompactGraph subgraph = graph.subgraph(vertices, localIds);
+
+            factory.apply(subgraph, threads).findCliques(minSize, clique -> {
+                for (int i = 0; i < clique.length; i++) {
+                    clique[i] = vertices[clique[i]];
+                }
+                visitor.visit(clique);
+            });
+
+            time = System.currentTimeMillis() - time;
+            if (subgraph.getVertexCount() >= LARGE_COMPONENT_SIZE) {
+                LOGGER.info("Component with {} vertices and {} edges: {} ms",
+                        new Object[] { subgraph.getVertexCount(), subgraph.getEdgeCount(), time });
+            } else {
+                LOGGER.debug("Component with {} vertices and {} edges: {} ms",
+                        new Object[] { subgraph.getVertexCount(), subgraph.getEdgeCount(), time });
+            }
+        }
+    }
+
+    private class BatchTask extends RecursiveAction {
+
+        private final List<List<Component>> batches;
+        private final int from, to;
+        private final int[] localIds;
+        private final int minSize;
+        private final CliqueVisitor visitor;
+
+        BatchTask(List<List<Component>> batches, int from, int to, int[] localIds, int minSize,
+                CliqueVisitor visitor) {
+            this.batches = batches;
+            this.from = from;
+            this.to = to;
+            this.localIds = localIds;
+            this.minSize = minSize;
+            this.visitor = visitor;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= 1) {
+                try {
+                    for (int i = from; i < to; i++) {
+                        solve(batches.get(i), localIds, minSize, visitor);
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return;
+            }
+
+            int middle = (from + to) >>> 1;
+            invokeAll(new BatchTask(batches, from, middle, localIds, minSize, visitor),
+                    new BatchTask(batches, middle, to, localIds, minSize, visitor));
+        }
+    }
+}
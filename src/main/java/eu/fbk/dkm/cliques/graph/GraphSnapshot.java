@@ -0,0 +1,182 @@
+package eu.fbk.dkm.cliques.graph;
+
+import eu.fbk.dkm.cliques.util.LinkStatistics;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary snapshot of an extracted graph: the vertex names, the weighted edges in CSR form and the links of each
+ * cluster to DBpedia pages with their statistics. Reading it back is a matter of mapping the file and copying whole
+ * arrays out of it, so clique searches with different parameters don't need to parse the NAF files again.
+ * <p>
+ * All numbers are big-endian, strings are UTF-8 with their length in bytes before them. After a magic number and a
+ * version, the file contains: vertex count and names; offsets and targets/weights arrays; page count and names; for
+ * each cluster with links, its vertex id, the number of links and (page id, count, error, confidence sum, max
+ * confidence) tuples.
+ */
+
+public class GraphSnapshot {
+
+    private static final int MAGIC = 0x434c5147;
+    private static final int VERSION = 3;
+
+    private final CompactGraph graph;
+    private final LinkStatistics links;
+
+    public GraphSnapshot(CompactGraph graph, LinkStatistics links) {
+        this.graph = graph;
+        this.links = links;
+    }
+
+    public CompactGraph getGraph() {
+        return graph;
+    }
+
+    /**
+     * Get the links of each cluster (by vertex name) to DBpedia pages.
+     */
+    public LinkStatistics getLinks() {
+        return links;
+    }
+
+    public void write(File file) throws IOException {
+        int n = graph.getVertexCount();
+        Map<String, Integer> vertexIds = new HashMap<>();
+        Map<String, Integer> pageIds = new HashMap<>();
+        for (int v = 0; v < n; v++) {
+            vertexIds.put(graph.getName(v), v);
+        }
+        for (String cluster : links.getClusters()) {
+            for (LinkStatistics.Link link : links.getLinks(cluster)) {
+                pageIds.putIfAbsent(link.getPage(), pageIds.size());
+            }
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+
+            out.writeInt(n);
+            for (int v = 0; v < n; v++) {
+                writeString(out, graph.getName(v));
+            }
+            int offset = 0;
+            out.writeInt(offset);
+            for (int v = 0; v < n; v++) {
+                offset += graph.getDegree(v);
+                out.writeInt(offset);
+            }
+            for (int v = 0; v < n; v++) {
+                for (int i = 0; i < graph.getDegree(v); i++) {
+                    out.writeInt(graph.getNeighbor(v, i));
+                }
+            }
+            for (int v = 0; v < n; v++) {
+                for (int i = 0; i < graph.getDegree(v); i++) {
+                    out.writeInt(graph.getWeight(v, i));
+                }
+            }
+
+            String[] pages = new String[pageIds.size()];
+            for (Map.Entry<String, Integer> entry : pageIds.entrySet()) {
+                pages[entry.getValue()] = entry.getKey();
+            }
+            out.writeInt(pages.length);
+            for (String page : pages) {
+                writeString(out, page);
+            }
+            out.writeInt(links.getClusters().size());
+            for (String cluster : links.getClusters()) {
+                Integer v = vertexIds.get(cluster);
+                if (v == null) {
+                    throw new IllegalArgumentException("Cluster " + cluster + " is not a vertex");
+                }
+                List<LinkStatistics.Link> clusterLinks = links.getLinks(cluster);
+                out.writeInt(v);
+                out.writeInt(clusterLinks.size());
+                for (LinkStatistics.Link link : clusterLinks) {
+                    out.writeInt(pageIds.get(link.getPage()));
+                    out.writeInt(link.getCount());
+                    out.writeInt(link.getError());
+                    out.writeDouble(link.getSum());
+                    out.writeDouble(link.getMax());
+                }
+            }
+        }
+    }
+
+    public static GraphSnapshot read(File file) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Graph file too large to be mapped: " + file);
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        if (buffer.getInt() != MAGIC) {
+            throw new IOException("Not a graph file: " + file);
+        }
+        int version = buffer.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported graph file version " + version + ": " + file);
+        }
+
+        int n = buffer.getInt();
+        String[] names = new String[n];
+        for (int v = 0; v < n; v++) {
+            names[v] = readString(buffer);
+        }
+        int[] offsets = readInts(buffer, n + 1);
+        int[] targets = readInts(buffer, offsets[n]);
+        int[] weights = readInts(buffer, offsets[n]);
+        CompactGraph graph = new CompactGraph(names, offsets, targets, weights);
+
+        String[] pages = new String[buffer.getInt()];
+        for (int i = 0; i < pages.length; i++) {
+            pages[i] = readString(buffer);
+        }
+        int clusters = buffer.getInt();
+        LinkStatistics links = new LinkStatistics();
+        for (int i = 0; i < clusters; i++) {
+            String cluster = names[buffer.getInt()];
+            int size = buffer.getInt();
+            for (int j = 0; j < size; j++) {
+                String page = pages[buffer.getInt()];
+                int count = buffer.getInt();
+                int error = buffer.getInt();
+                double sum = buffer.getDouble();
+                links.add(cluster, new LinkStatistics.Link(page, count, error, sum, buffer.getDouble()));
+            }
+        }
+
+        return new GraphSnapshot(graph, links);
+    }
+
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int[] readInts(ByteBuffer buffer, int length) {
+        int[] ints = new int[length];
+        buffer.asIntBuffer().get(ints);
+        buffer.position(buffer.position() + length * 4);
+        return ints;
+    }
+}
@@ -0,0 +1,357 @@
+package eu.fbk.dkm.cliques.graph;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Keeps the maximal cliques of a growing graph, updating them as edges are added instead of enumerating them again.
+ * <p>
+ * When the edge (u, v) is added, the new maximal cliques are {u, v} plus each maximal clique of the common
+ * neighborhood of u and v, and the only cliques that stop being maximal are the ones obtained by removing u or v
+ * from a new clique. So the cost of an insertion only depends on the neighborhood of its endpoints. Only cliques with
+ * at least the minimum size are kept, which is enough since removed cliques are always smaller than new ones.
+ */
+
+public class IncrementalCliqueIndex {
+
+    private final int minSize;
+
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final List<String> names = new ArrayList<>();
+    private int[][] neighbors = new int[1024][];
+    private int[] degrees = new int[1024];
+
+    private final Set<Clique> cliques = new HashSet<>();
+
+    public IncrementalCliqueIndex(int minSize) {
+        this.minSize = minSize;
+    }
+
+    public int getMinSize() {
+        return minSize;
+    }
+
+    /**
+     * Add a vertex, if not already there.
+     *
+     * @return the id of the vertex
+     */
+    public int addVertex(String name) {
+        Integer id = ids.get(name);
+        if (id == null) {
+            id = names.size();
+            ids.put(name, id);
+            names.add(name);
+            if (id == neighbors.length) {
+                neighbors = Arrays.copyOf(neighbors, id * 2);
+                degrees = Arrays.copyOf(degrees, id * 2);
+            }
+            neighbors[id] = new int[4];
+        }
+        return id;
+    }
+
+    public int getVertexCount() {
+        return names.size();
+    }
+
+    public String getName(int v) {
+        return names.get(v);
+    }
+
+    public boolean isAdjacent(int u, int v) {
+        return Arrays.binarySearch(neighbors[u], 0, degrees[u], v) >= 0;
+    }
+
+    public int getCliqueCount() {
+        return cliques.size();
+    }
+
+    /**
+     * Get the current maximal cliques with at least the minimum size, each one as a sorted array of vertex ids.
+     */
+    public List<int[]> getCliques() {
+        List<int[]> result = new ArrayList<>(cliques.size());
+        for (Clique clique : cliques) {
+            result.add(clique.vertices.clone());
+        }
+        return result;
+    }
+
+    /**
+     * Add an edge without updating the cliques, when loading a graph whose cliques are loaded or computed later.
+     *
+     * @return false if the edge was already there
+     */
+    public boolean loadEdge(int u, int v) {
+        if (u == v || isAdjacent(u, v)) {
+            return false;
+        }
+        insert(u, v);
+        insert(v, u);
+        return true;
+    }
+
+    /**
+     * Add a clique computed elsewhere, typically read from a previous run on the same graph. Nothing is added if the
+     * vertices are not a maximal clique of the current graph, as when the graph was built with different thresholds
+     * or the cliques are almost-cliques.
+     *
+     * @return false if the vertices are not a maximal clique
+     */
+    public boolean loadClique(int[] clique) {
+        int[] vertices = clique.clone();
+        Arrays.sort(vertices);
+        int smallest = -1;
+        for (int i = 0; i < vertices.length; i++) {
+            if (i > 0 && vertices[i] == vertices[i - 1]) {
+                return false;
+            }
+            for (int j = i + 1; j < vertices.length; j++) {
+                if (!isAdjacent(vertices[i], vertices[j])) {
+                    return false;
+                }
+            }
+            if (smallest < 0 || degrees[vertices[i]] < degrees[smallest]) {
+                smallest = vertices[i];
+            }
+        }
+
+        // Maximal if no other neighbor of a vertex is adjacent to all the vertices
+        for (int i = 0; smallest >= 0 && i < degrees[smallest]; i++) {
+            int w = neighbors[smallest][i];
+            if (Arrays.binarySearch(vertices, w) >= 0) {
+                continue;
+            }
+            boolean adjacentToAll = true;
+            for (int j = 0; j < vertices.length && adjacentToAll; j++) {
+                adjacentToAll = vertices[j] == smallest || isAdjacent(w, vertices[j]);
+            }
+            if (adjacentToAll) {
+                return false;
+            }
+        }
+
+        if (vertices.length >= minSize) {
+            cliques.add(new Clique(vertices));
+        }
+        return true;
+    }
+
+    /**
+     * Replace the cliques with the ones of the current graph, enumerated from scratch.
+     */
+    public void computeCliques(int threads) throws IOException {
+        CompactGraph.Builder builder = CompactGraph.builder();
+        for (String name : names) {
+            builder.addVertex(name);
+        }
+        for (int v = 0; v < names.size(); v++) {
+            for (int i = 0; i < degrees[v]; i++) {
+                if (neighbors[v][i] > v) {
+                    builder.addEdge(v, neighbors[v][i]);
+                }
+            }
+        }
+        CompactGraph graph = builder.build().kCore(minSize - 1);
+
+        // The k-core renumbers the vertices, so go back to the ids of the index through the names
+        cliques.clear();
+        new ComponentCliqueFinder(graph, threads, PivotCliqueFinder::new).findCliques(minSize, clique -> {
+            for (int i = 0; i < clique.length; i++) {
+                clique[i] = ids.get(graph.getName(clique[i]));
+            }
+            Clique c = new Clique(clique);
+            synchronized (cliques) {
+                cliques.add(c);
+            }
+        });
+    }
+
+    /**
+     * Add an edge and update the cliques, recording the changes.
+     *
+     * @param delta Collects the cliques added and removed, possibly over several insertions
+     * @return false if the edge was already there
+     */
+    public boolean addEdge(int u, int v, Delta delta) {
+        if (!loadEdge(u, v)) {
+            return false;
+        }
+
+        // Common neighbors of u and v, by merging their sorted rows
+        int[] p = new int[Math.min(degrees[u], degrees[v])];
+        int pSize = 0;
+        for (int i = 0, j = 0; i < degrees[u] && j < degrees[v]; ) {
+            int a = neighbors[u][i], b = neighbors[v][j];
+            if (a == b) {
+                p[pSize++] = a;
+                i++;
+                j++;
+            } else if (a < b) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+
+        int[] clique = new int[pSize + 2];
+        clique[0] = u;
+        clique[1] = v;
+        expand(clique, 2, p, pSize, new int[0], 0, delta);
+        return true;
+    }
+
+    private void expand(int[] clique, int size, int[] p, int pSize, int[] x, int xSize, Delta delta) {
+        if (size + pSize < minSize) {
+            return;
+        }
+        if (pSize == 0) {
+            if (xSize == 0) {
+                added(new Clique(Arrays.copyOf(clique, size)), delta);
+
+                // Without the new edge, the clique minus one of its endpoints may have been maximal
+                if (size > minSize) {
+                    removed(new Clique(Arrays.copyOfRange(clique, 1, size)), delta);
+                    int[] withoutV = Arrays.copyOfRange(clique, 1, size);
+                    withoutV[0] = clique[0];
+                    removed(new Clique(withoutV), delta);
+                }
+            }
+            return;
+        }
+
+        int pivot = p[0];
+        int best = -1;
+        for (int i = 0; i < pSize + xSize; i++) {
+            int w = i < pSize ? p[i] : x[i - pSize];
+            int count = 0;
+            for (int j = 0; j < pSize; j++) {
+                if (isAdjacent(w, p[j])) {
+                    count++;
+                }
+            }
+            if (count > best) {
+                best = count;
+                pivot = w;
+            }
+        }
+        int[] candidates = new int[pSize];
+        int cSize = 0;
+        for (int i = 0; i < pSize; i++) {
+            if (!isAdjacent(pivot, p[i])) {
+                candidates[cSize++] = p[i];
+            }
+        }
+
+        x = Arrays.copyOf(x, xSize + pSize);
+        for (int c = 0; c < cSize && size + pSize >= minSize; c++) {
+            int w = candidates[c];
+            int[] newP = new int[pSize];
+            int newPSize = 0;
+            for (int i = 0; i < pSize; i++) {
+                if (isAdjacent(w, p[i])) {
+                    newP[newPSize++] = p[i];
+                }
+            }
+            int[] newX = new int[xSize];
+            int newXSize = 0;
+            for (int i = 0; i < xSize; i++) {
+                if (isAdjacent(w, x[i])) {
+                    newX[newXSize++] = x[i];
+                }
+            }
+
+            clique[size] = w;
+            expand(clique, size + 1, newP, newPSize, newX, newXSize, delta);
+
+            for (int i = 0; i < pSize; i++) {
+                if (p[i] == w) {
+                    p[i] = p[--pSize];
+                    break;
+                }
+            }
+            x[xSize++] = w;
+        }
+    }
+
+    private void added(Clique clique, Delta delta) {
+        cliques.add(clique);
+        if (!delta.removed.remove(clique)) {
+            delta.added.add(clique);
+        }
+    }
+
+    private void removed(Clique clique, Delta delta) {
+        if (cliques.remove(clique) && !delta.added.remove(clique)) {
+            delta.removed.add(clique);
+        }
+    }
+
+    private void insert(int v, int u) {
+        int[] row = neighbors[v];
+        int degree = degrees[v];
+        if (degree == row.length) {
+            row = Arrays.copyOf(row, degree * 2);
+            neighbors[v] = row;
+        }
+        int i = -Arrays.binarySearch(row, 0, degree, u) - 1;
+        System.arraycopy(row, i, row, i + 1, degree - i);
+        row[i] = u;
+        degrees[v]++;
+    }
+
+    /**
+     * Net changes to the cliques over a sequence of insertions: a clique added and then removed is in neither set.
+     */
+    public static class Delta {
+
+        private final Set<Clique> added = new HashSet<>();
+        private final Set<Clique> removed = new HashSet<>();
+
+        public List<int[]> getAdded() {
+            return toList(added);
+        }
+
+        public List<int[]> getRemoved() {
+            return toList(removed);
+        }
+
+        public boolean isEmpty() {
+            return added.isEmpty() && removed.isEmpty();
+        }
+
+        private static List<int[]> toList(Set<Clique> cliques) {
+            List<int[]> result = new ArrayList<>(cliques.size());
+            for (Clique clique : cliques) {
+                result.add(clique.vertices.clone());
+            }
+            return result;
+        }
+    }
+
+    /**
+     * A clique as a sorted array of vertex ids, usable as a key.
+     */
+    private static class Clique {
+
+        private final int[] vertices;
+        private final int hash;
+
+        Clique(int[] vertices) {
+            Arrays.sort(vertices);
+            this.vertices = vertices;
+            this.hash = Arrays.hashCode(vertices);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Clique && Arrays.equals(vertices, ((Clique) o).vertices);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package eu.fbk.dkm.cliques.graph;
+
+import org.jgrapht.UndirectedGraph;
+import org.jgrapht.alg.BronKerboschCliqueFinder;
+import org.jgrapht.graph.DefaultEdge;
+import org.jgrapht.graph.SimpleGraph;
+
+import java.io.IOException;
+import java.util.Set;
+
+/**
+ * Plain Bron-Kerbosch enumeration from jgrapht, kept to compare results with {@link PivotCliqueFinder}. The graph is
+ * copied into a jgrapht one, and all the maximal cliques are collected in memory before being visited.
+ */
+
+public class JGraphTCliqueFinder implements CliqueFinder {
+
+    private final CompactGraph graph;
+
+    public JGraphTCliqueFinder(CompactGraph graph) {
+        this.graph = graph;
+    }
+
+    @Override
+    public void findCliques(int minSize, CliqueVisitor visitor) throws IOException {
+        UndirectedGraph<Integer, DefaultEdge> jGraph = new SimpleGraph<Integer, DefaultEdge>(DefaultEdge.class);
+        for (int v = 0; v < graph.getVertexCount(); v++) {
+            jGraph.addVertex(v);
+        }
+        for (int v = 0; v < graph.getVertexCount(); v++) {
+            for (int i = 0; i < graph.getDegree(v); i++) {
+                int u = graph.getNeighbor(v, i);
+                if (u > v) {
+                    jGraph.addEdge(v, u);
+                }
+            }
+        }
+
+        for (Set<Integer> clique : new BronKerboschCliqueFinder<>(jGraph).getAllMaximalCliques()) {
+            if (clique.size() >= minSize) {
+                int[] ids = new int[clique.size()];
+                int i = 0;
+                for (Integer v : clique) {
+                    ids[i++] = v;
+                }
+                visitor.visit(ids);
+            }
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package eu.fbk.dkm.cliques.graph;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Bron-Kerbosch enumeration of maximal cliques with Tomita pivoting, where the outer level visits the vertices in
+ * degeneracy order (Eppstein, Löffler and Strash). Each maximal clique is reported exactly once, by its first vertex
+ * in the ordering, and the candidate set of every outer call is bounded by the degeneracy of the graph.
+ * <p>
+ * The outer calls are independent, so with more than one thread they are run as separate tasks on a
+ * {@link ForkJoinPool}; in that case the visitor is called concurrently and in no particular order.
+ */
+
+public class PivotCliqueFinder implements CliqueFinder {
+
+    private final CompactGraph graph;
+    private final int threads;
+
+    private int[] order;
+    private int[] position;
+
+    public PivotCliqueFinder(CompactGraph graph) {
+        this(graph, 1);
+    }
+
+    public PivotCliqueFinder(CompactGraph graph, int threads) {
+        this.graph = graph;
+        this.threads = threads;
+    }
+
+    @Override
+    public void findCliques(int minSize, CliqueVisitor visitor) throws IOException {
+        order = graph.degeneracyOrder();
+        position = new int[order.length];
+        for (int i = 0; i < order.length; i++) {
+            position[order[i]] = i;
+        }
+
+        try {
+            if (threads > 1) {
+                ForkJoinPool pool = new ForkJoinPool(threads);
+                try {
+                    pool.invoke(new OuterTask(0, order.length, minSize, visitor));
+                } catch (UncheckedIOException e) {
+                    throw e.getCause();
+                } finally {
+                    pool.shutdown();
+                }
+            } else {
+                for (int i = 0; i < order.length; i++) {
+                    solve(i, minSize, visitor);
+                }
+            }
+        } finally {
+            order = null;
+            position = null;
+        }
+    }
+
+    /**
+     * Find the maximal cliques whose first vertex in degeneracy order is the i-th one.
+     */
+    private void solve(int i, int minSize, CliqueVisitor visitor) throws IOException {
+        int v = order[i];
+        int degree = graph.getDegree(v);
+        int[] p = new int[degree];
+        int[] x = new int[degree];
+        int pSize = 0, xSize = 0;
+        for (int j = 0; j < degree; j++) {
+            int u = graph.getNeighbor(v, j);
+            if (position[u] > i) {
+                p[pSize++] = u;
+            } else {
+                x[xSize++] = u;
+            }
+        }
+
+        int[] clique = new int[pSize + 1];
+        clique[0] = v;
+        expand(clique, 1, p, pSize, x, xSize, minSize, visitor);
+    }
+
+    private void expand(int[] clique, int size, int[] p, int pSize, int[] x, int xSize, int minSize,
+            CliqueVisitor visitor) throws IOException {
+        if (size + pSize < minSize) {
+            return;
+        }
+        if (pSize == 0) {
+            if (xSize == 0) {
+                visitor.visit(Arrays.copyOf(clique, size));
+            }
+            return;
+        }
+
+        // Only the vertices not adjacent to the pivot need to be branched on
+        int pivot = choosePivot(p, pSize, x, xSize);
+        int[] candidates = new int[pSize];
+        int cSize = 0;
+        for (int i = 0; i < pSize; i++) {
+            if (!graph.isAdjacent(pivot, p[i])) {
+                candidates[cSize++] = p[i];
+            }
+        }
+
+        // X grows while P shrinks, so leave room for the whole of P
+        x = Arrays.copyOf(x, xSize + pSize);
+
+        for (int c = 0; c < cSize && size + pSize >= minSize; c++) {
+            int v = candidates[c];
+
+            int[] newP = new int[pSize];
+            int newPSize = 0;
+            for (int i = 0; i < pSize; i++) {
+                if (graph.isAdjacent(v, p[i])) {
+                    newP[newPSize++] = p[i];
+                }
+            }
+            int[] newX = new int[xSize];
+            int newXSize = 0;
+            for (int i = 0; i < xSize; i++) {
+                if (graph.isAdjacent(v, x[i])) {
+                    newX[newXSize++] = x[i];
+                }
+            }
+
+            clique[size] = v;
+            expand(clique, size + 1, newP, newPSize, newX, newXSize, minSize, visitor);
+
+            for (int i = 0; i < pSize; i++) {
+                if (p[i] == v) {
+                    p[i] = p[--pSize];
+                    break;
+                }
+            }
+            x[xSize++] = v;
+        }
+    }
+
+    private int choosePivot(int[] p, int pSize, int[] x, int xSize) {
+        int pivot = p[0];
+        int best = -1;
+        for (int i = 0; i < pSize + xSize; i++) {
+            int u = i < pSize ? p[i] : x[i - pSize];
+            if (graph.getDegree(u) <= best) {
+                continue;
+            }
+            int count = 0;
+            for (int j = 0; j < pSize; j++) {
+                if (graph.isAdjacent(u, p[j])) {
+                    count++;
+                }
+            }
+            if (count > best) {
+                best = count;
+                pivot = u;
+                if (best == pSize) {
+                    break;
+                }
+            }
+        }
+        return pivot;
+    }
+
+    private class OuterTask extends RecursiveAction {
+
+        private final int from, to;
+        private final int minSize;
+        private final CliqueVisitor visitor;
+
+        OuterTask(int from, int to, int minSize, CliqueVisitor visitor) {
+            this.from = from;
+            this.to = to;
+            this.minSize = minSize;
+            this.visitor = visitor;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= 1) {
+                try {
+                    for (int i = from; i < to; i++) {
+                        solve(i, minSize, visitor);
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return;
+            }
+
+            // Halving the range lets idle workers steal the other part
+            int middle = (from + to) >>> 1;
+            invokeAll(new OuterTask(from, middle, minSize, visitor), new OuterTask(middle, to, minSize, visitor));
+        }
+    }
+}
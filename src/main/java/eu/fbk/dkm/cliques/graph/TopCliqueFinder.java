@@ -0,0 +1,266 @@
+package eu.fbk.dkm.cliques.graph;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Branch-and-bound search of the k largest maximal cliques (with k = 1, a maximum clique). The search is the pivoting
+ * Bron-Kerbosch one of {@link PivotCliqueFinder}, but the candidates of each call are greedily coloured first: since
+ * the vertices of a clique have different colours, the current size plus the number of colours bounds every clique
+ * below that call, which is cut as soon as it cannot beat the k-th best clique found so far (as in Tomita and Seki).
+ * The outer level visits the vertices in reverse degeneracy order, so that the dense core, where large cliques are, is
+ * searched first.
+ * <p>
+ * Cliques are kept until the search ends and then passed to the visitor from the largest, on the calling thread. With
+ * more than one thread, the outer calls run on a {@link ForkJoinPool} and share the bound; ties among cliques of the
+ * k-th size are then broken arbitrarily.
+ */
+
+public class TopCliqueFinder implements CliqueFinder {
+
+    private final CompactGraph graph;
+    private final int k;
+    private final int threads;
+
+    private int[] order;
+    private int[] position;
+    private PriorityQueue<int[]> best;
+    private volatile int bound;
+
+    public TopCliqueFinder(CompactGraph graph, int k) {
+        this(graph, k, 1);
+    }
+
+    public TopCliqueFinder(CompactGraph graph, int k, int threads) {
+        this.graph = graph;
+        this.k = k;
+        this.threads = threads;
+    }
+
+    @Override
+    public void findCliques(int minSize, CliqueVisitor visitor) throws IOException {
+        order = graph.degeneracyOrder();
+        position = new int[order.length];
+        for (int i = 0; i < order.length; i++) {
+            position[order[i]] = i;
+        }
+        best = new PriorityQueue<>(k, (c1, c2) -> Integer.compare(c1.length, c2.length));
+        bound = minSize - 1;
+
+        List<int[]> cliques;
+        try {
+            if (threads > 1) {
+                ForkJoinPool pool = new ForkJoinPool(threads);
+                try {
+                    pool.invoke(new OuterTask(0, order.length));
+                } finally {
+                    pool.shutdown();
+                }
+            } else {
+                for (int i = order.length - 1; i >= 0; i--) {
+                    solve(i);
+                }
+            }
+            cliques = new ArrayList<>(best);
+        } finally {
+            order = null;
+            position = null;
+            best = null;
+        }
+
+        cliques.sort(Collections.reverseOrder((c1, c2) -> Integer.compare(c1.length, c2.length)));
+        for (int[] clique : cliques) {
+            visitor.visit(clique);
+        }
+    }
+
+    private void solve(int i) {
+        int v = order[i];
+        int degree = graph.getDegree(v);
+        int[] p = new int[degree];
+        int[] x = new int[degree];
+        int pSize = 0, xSize = 0;
+        for (int j = 0; j < degree; j++) {
+            int u = graph.getNeighbor(v, j);
+            if (position[u] > i) {
+                p[pSize++] = u;
+            } else {
+                x[xSize++] = u;
+            }
+        }
+
+        if (pSize + 1 <= bound) {
+            return;
+        }
+        int[] clique = new int[pSize + 1];
+        clique[0] = v;
+        expand(clique, 1, p, pSize, x, xSize);
+    }
+
+    private void expand(int[] clique, int size, int[] p, int pSize, int[] x, int xSize) {
+        if (pSize == 0) {
+            if (xSize == 0 && size > bound) {
+                offer(Arrays.copyOf(clique, size));
+            }
+            return;
+        }
+
+        // Vertices of the same color are not adjacent, so a clique takes at most one vertex per color
+        int[] sorted = new int[pSize];
+        int colors = colorSort(p, pSize, sorted);
+        if (size + colors <= bound) {
+            return;
+        }
+
+        // Branch on the vertices not adjacent to the pivot, the most colorful first
+        int pivot = choosePivot(p, pSize, x, xSize);
+        int[] candidates = new int[pSize];
+        int cSize = 0;
+        for (int i = pSize - 1; i >= 0; i--) {
+            if (!graph.isAdjacent(pivot, sorted[i])) {
+                candidates[cSize++] = sorted[i];
+            }
+        }
+
+        // X grows while P shrinks, so leave room for the whole of P
+        x = Arrays.copyOf(x, xSize + pSize);
+
+        for (int c = 0; c < cSize && size + pSize > bound; c++) {
+            int v = candidates[c];
+
+            int[] newP = new int[pSize];
+            int newPSize = 0;
+            for (int i = 0; i < pSize; i++) {
+                if (graph.isAdjacent(v, p[i])) {
+                    newP[newPSize++] = p[i];
+                }
+            }
+            int[] newX = new int[xSize];
+            int newXSize = 0;
+            for (int i = 0; i < xSize; i++) {
+                if (graph.isAdjacent(v, x[i])) {
+                    newX[newXSize++] = x[i];
+                }
+            }
+
+            clique[size] = v;
+            expand(clique, size + 1, newP, newPSize, newX, newXSize);
+
+            for (int i = 0; i < pSize; i++) {
+                if (p[i] == v) {
+                    p[i] = p[--pSize];
+                    break;
+                }
+            }
+            x[xSize++] = v;
+        }
+    }
+
+    private int choosePivot(int[] p, int pSize, int[] x, int xSize) {
+        int pivot = p[0];
+        int best = -1;
+        for (int i = 0; i < pSize + xSize; i++) {
+            int u = i < pSize ? p[i] : x[i - pSize];
+            if (graph.getDegree(u) <= best) {
+                continue;
+            }
+            int count = 0;
+            for (int j = 0; j < pSize; j++) {
+                if (graph.isAdjacent(u, p[j])) {
+                    count++;
+                }
+            }
+            if (count > best) {
+                best = count;
+                pivot = u;
+                if (best == pSize) {
+                    break;
+                }
+            }
+        }
+        return pivot;
+    }
+
+    /**
+     * Greedily color the candidates, each one with the first color not used by its neighbors.
+     *
+     * @param sorted Filled with the candidates sorted by color
+     * @return the number of colors used
+     */
+    private int colorSort(int[] p, int pSize, int[] sorted) {
+        int[][] classes = new int[pSize][];
+        int[] classSizes = new int[pSize];
+        int classCount = 0;
+        for (int i = 0; i < pSize; i++) {
+            int v = p[i];
+            int color = 0;
+            while (color < classCount && hasNeighbor(v, classes[color], classSizes[color])) {
+                color++;
+            }
+            if (color == classCount) {
+                classes[classCount++] = new int[pSize];
+            }
+            classes[color][classSizes[color]++] = v;
+        }
+
+        int size = 0;
+        for (int color = 0; color < classCount; color++) {
+            for (int i = 0; i < classSizes[color]; i++) {
+                sorted[size++] = classes[color][i];
+            }
+        }
+        return classCount;
+    }
+
+    private boolean hasNeighbor(int v, int[] vertices, int size) {
+        for (int i = 0; i < size; i++) {
+            if (graph.isAdjacent(v, vertices[i])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private synchronized void offer(int[] clique) {
+        if (clique.length <= bound) {
+            return;
+        }
+        best.add(clique);
+        if (best.size() > k) {
+            best.poll();
+        }
+        if (best.size() == k) {
+            bound = best.peek().length;
+        }
+    }
+
+    private class OuterTask extends RecursiveAction {
+
+        private final int from, to;
+
+        OuterTask(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= 1) {
+                for (int i = to - 1; i >= from; i--) {
+                    solve(i);
+                }
+                return;
+            }
+
+            // The upper half is the denser one, so it goes first to raise the bound early
+            int middle = (from + to) >>> 1;
+            invokeAll(new OuterTask(middle, to), new OuterTask(from, middle));
+        }
+    }
+}
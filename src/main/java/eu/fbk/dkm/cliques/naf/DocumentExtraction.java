@@ -0,0 +1,92 @@
+package eu.fbk.dkm.cliques.naf;
+
+import java.util.*;
+
+/**
+ * What {@link eu.fbk.dkm.cliques.ExtractGraph} needs from a NAF document: the DBpedia types of the linked pages
+ * and, for each sentence, the person mentions with their candidate links. Candidates are not filtered by type nor by
+ * birth year, since that depends on data collected from the other documents; it is done when documents are merged.
+ *
+ * @see DocumentExtractor
+ */
+
+public class DocumentExtraction {
+
+    private final Map<String, Set<String>> types;
+    private final List<List<Mention>> sentences;
+
+    public DocumentExtraction(Map<String, Set<String>> types, List<List<Mention>> sentences) {
+        this.types = types;
+        this.sentences = sentences;
+    }
+
+    /**
+     * Get the DBpedia types of each page linked in the document.
+     */
+    public Map<String, Set<String>> getTypes() {
+        return types;
+    }
+
+    /**
+     * Get the person mentions of each sentence, in document order.
+     */
+    public List<List<Mention>> getSentences() {
+        return sentences;
+    }
+
+    /**
+     * A person entity found in a sentence, directly or through coreference.
+     */
+    public static class Mention {
+
+        private final int entity;
+        private final String str;
+        private final List<Candidate> candidates;
+
+        public Mention(int entity, String str, List<Candidate> candidates) {
+            this.entity = entity;
+            this.str = str;
+            this.candidates = candidates;
+        }
+
+        /**
+         * Get the index of the entity in the document, the same for all its mentions.
+         */
+        public int getEntity() {
+            return entity;
+        }
+
+        public String getStr() {
+            return str;
+        }
+
+        /**
+         * Get the pages linked to the head of the mention, in document order.
+         */
+        public List<Candidate> getCandidates() {
+            return candidates;
+        }
+    }
+
+    /**
+     * A DBpedia page linked to a mention, with the confidence of the link.
+     */
+    public static class Candidate {
+
+        private final String reference;
+        private final double confidence;
+
+        public Candidate(String reference, double confidence) {
+            this.reference = reference;
+            this.confidence = confidence;
+        }
+
+        public String getReference() {
+            return reference;
+        }
+
+        public double getConfidence() {
+            return confidence;
+        }
+    }
+}
@@ -0,0 +1,291 @@
+package eu.fbk.dkm.cliques.naf;
+
+import com.google.common.collect.HashMultimap;
+import eu.fbk.dkm.cliques.naf.DocumentExtraction.Candidate;
+import eu.fbk.dkm.cliques.naf.DocumentExtraction.Mention;
+import ixa.kaflib.*;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.*;
+
+/**
+ * Extracts the person mentions of a {@link KAFDocument}, as done by {@link eu.fbk.dkm.cliques.ExtractGraph}: an
+ * entity of type PERSON is attached to the linked entities sharing its head term; with coreference, a term without
+ * entities gets the ones of the terms in the same coreference chains. Extraction only depends on the document, so
+ * documents can be extracted in parallel.
+ * <p>
+ * Documents are read with {@link NafReader}, which only loads the layers needed here; the kaflib object model can
+ * still be used instead, e.g. to compare the two.
+ */
+
+public class DocumentExtractor {
+
+    private final boolean useCoref;
+    private final boolean useSpotted;
+    private final boolean useKaflib;
+
+    public DocumentExtractor(boolean useCoref, boolean useSpotted) {
+        this(useCoref, useSpotted, false);
+    }
+
+    /**
+     * @param useCoref   Whether to follow coreference chains
+     * @param useSpotted Whether to only consider the words of linked entities that are spotted in DBpedia
+     * @param useKaflib  Whether to read documents with kaflib instead of {@link NafReader}
+     */
+    public DocumentExtractor(boolean useCoref, boolean useSpotted, boolean useKaflib) {
+        this.useCoref = useCoref;
+        this.useSpotted = useSpotted;
+        this.useKaflib = useKaflib;
+    }
+
+    /**
+     * Get a string identifying the options that change the extraction, to key cached extractions.
+     */
+    public String getSignature() {
+        return "person-mentions-2 coref=" + useCoref + " spotted=" + useSpotted + " kaflib=" + useKaflib;
+    }
+
+    public DocumentExtraction extract(Reader reader) throws IOException {
+        try {
+            if (useKaflib) {
+                return extract(KAFDocument.createFromStream(reader));
+            }
+            return extract(NafReader.read(reader));
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw e instanceof IOException ? (IOException) e : new IOException(e.getMessage(), e);
+        }
+    }
+
+    DocumentExtraction extract(NafDocument document) {
+        Map<Integer, List<Candidate>> candidates = new HashMap<>();
+        Map<Integer, Set<Integer>> corefTerms = new HashMap<>();
+        Map<Integer, List<Integer>> termEntities = new HashMap<>();
+        Map<String, Set<String>> types = new HashMap<>();
+
+        int[] wfTerms = new int[document.wfSentences.length];
+        Arrays.fill(wfTerms, -1);
+        for (int term = 0; term < document.termWFs.length; term++) {
+            for (int wf : document.termWFs[term]) {
+                wfTerms[wf] = term;
+            }
+        }
+
+        boolean[] okWFs = new boolean[wfTerms.length];
+        for (NafDocument.LinkedEntity linkedEntity : document.linkedEntities) {
+            if (linkedEntity.spotted) {
+                for (int wf : linkedEntity.wfs) {
+                    okWFs[wf] = true;
+                }
+            }
+            if (!linkedEntity.dbpediaTypes.isEmpty()) {
+                types.computeIfAbsent(linkedEntity.reference, r -> new HashSet<>())
+                        .addAll(linkedEntity.dbpediaTypes);
+            }
+        }
+
+        for (NafDocument.LinkedEntity linkedEntity : document.linkedEntities) {
+            int[] terms = new int[linkedEntity.wfs.length];
+            int size = 0;
+            for (int wf : linkedEntity.wfs) {
+                if ((!useSpotted || okWFs[wf]) && wfTerms[wf] >= 0) {
+                    terms[size++] = wfTerms[wf];
+                }
+            }
+            if (size > 0) {
+                Integer termsHead = document.getTermsHead(Arrays.copyOf(terms, size));
+                if (termsHead != null) {
+                    candidates.computeIfAbsent(termsHead, t -> new ArrayList<>())
+                            .add(new Candidate(linkedEntity.reference, linkedEntity.confidence));
+                }
+            }
+        }
+
+        int[] entityIndexes = new int[document.entities.length];
+        int entityCount = 0;
+        for (int i = 0; i < document.entities.length; i++) {
+            if (document.entities[i].type.equals("PERSON")) {
+                Integer termsHead = document.getTermsHead(document.entities[i].terms);
+                if (termsHead != null) {
+                    termEntities.computeIfAbsent(termsHead, t -> new ArrayList<>()).add(i);
+                    entityIndexes[i] = entityCount++;
+                }
+            }
+        }
+
+        if (useCoref) {
+            for (int[][] coref : document.corefs) {
+                Set<Integer> heads = new LinkedHashSet<>();
+                for (int[] span : coref) {
+                    Integer termsHead = document.getTermsHead(span);
+                    if (termsHead != null) {
+                        heads.add(termsHead);
+                    }
+                }
+                for (Integer head : heads) {
+                    corefTerms.computeIfAbsent(head, t -> new LinkedHashSet<>()).addAll(heads);
+                }
+            }
+        }
+
+        List<List<Mention>> sentences = new ArrayList<>();
+        for (int i = 0; i < document.getNumSentences(); i++) {
+            sentences.add(new ArrayList<>());
+        }
+        for (int term = 0; term < document.termWFs.length; term++) {
+            int sentNo = document.getTermSentence(term);
+            if (sentNo < 1) {
+                continue;
+            }
+            List<Mention> mentions = sentences.get(sentNo - 1);
+            List<Integer> entTerm = termEntities.get(term);
+            Set<Integer> corefTerm = corefTerms.get(term);
+
+            if (entTerm != null) {
+                for (int entity : entTerm) {
+                    mentions.add(mention(document, entity, term, entityIndexes, candidates));
+                }
+            } else if (corefTerm != null) {
+                for (int other : corefTerm) {
+                    if (other == term || !termEntities.containsKey(other)) {
+                        continue;
+                    }
+                    for (int corefEntity : termEntities.get(other)) {
+                        mentions.add(mention(document, corefEntity, other, entityIndexes, candidates));
+                    }
+                }
+            }
+        }
+
+        return new DocumentExtraction(types, sentences);
+    }
+
+    public DocumentExtraction extract(KAFDocument document) {
+        Map<Term, List<Candidate>> candidates = new HashMap<>();
+        HashMultimap<Term, Term> corefHashMultimap = HashMultimap.create();
+        HashMultimap<Term, Entity> entityHashMultimap = HashMultimap.create();
+        Map<String, Set<String>> types = new HashMap<>();
+
+        HashMap<WF, Term> termsMap = new HashMap<>();
+        for (Term term : document.getTerms()) {
+            for (WF wf : term.getWFs()) {
+                termsMap.put(wf, term);
+            }
+        }
+
+        Set<WF> okWFs = new HashSet<WF>();
+        List<LinkedEntity> linkedEntities = document.getLinkedEntities();
+        for (LinkedEntity linkedEntity : linkedEntities) {
+            if (linkedEntity.isSpotted()) {
+                for (WF wf : linkedEntity.getWFs().getTargets()) {
+                    okWFs.add(wf);
+                }
+            }
+            if (linkedEntity.getTypes().get("DBPEDIA") != null) {
+                Set<String> referenceTypes = types.computeIfAbsent(linkedEntity.getReference(), r -> new HashSet<>());
+                for (String type : linkedEntity.getTypes().get("DBPEDIA")) {
+                    referenceTypes.add(type);
+                }
+            }
+        }
+
+        for (LinkedEntity linkedEntity : linkedEntities) {
+            Span<Term> termSpan = KAFDocument.newTermSpan();
+            for (WF wf : linkedEntity.getWFs().getTargets()) {
+                if (!useSpotted || okWFs.contains(wf)) {
+                    termSpan.addTarget(termsMap.get(wf));
+                }
+            }
+            if (termSpan.size() > 0) {
+                Term termsHead = document.getTermsHead(termSpan.getTargets());
+                if (termsHead != null) {
+                    candidates.computeIfAbsent(termsHead, t -> new ArrayList<>())
+                            .add(new Candidate(linkedEntity.getReference(), linkedEntity.getConfidence()));
+                }
+            }
+        }
+
+        Map<Entity, Integer> entityIndexes = new HashMap<>();
+        for (Entity entity : document.getEntities()) {
+            if (entity.getType().equals("PERSON")) {
+                Term termsHead = document.getTermsHead(entity.getTerms());
+                if (termsHead != null) {
+                    entityHashMultimap.put(termsHead, entity);
+                    entityIndexes.putIfAbsent(entity, entityIndexes.size());
+                }
+            }
+        }
+
+        if (useCoref) {
+            for (Coref coref : document.getCorefs()) {
+                Set<Term> heads = new HashSet<>();
+                for (Span<Term> termSpan : coref.getSpans()) {
+                    Term termsHead = document.getTermsHead(termSpan.getTargets());
+                    if (termsHead != null) {
+                        heads.add(termsHead);
+                    }
+                }
+                for (Term head : heads) {
+                    corefHashMultimap.putAll(head, heads);
+                }
+            }
+        }
+
+        List<List<Mention>> sentences = new ArrayList<>();
+        for (int i = 0; i < document.getNumSentences(); i++) {
+            int sentNo = i + 1;
+            List<Mention> mentions = new ArrayList<>();
+
+            for (Term term : document.getTermsBySent(sentNo)) {
+                Set<Entity> entTerm = entityHashMultimap.get(term);
+                Set<Term> corefTerms = corefHashMultimap.get(term);
+
+                if (entTerm.size() > 0) {
+                    for (Entity entity : entTerm) {
+                        mentions.add(mention(entity, term, entityIndexes, candidates));
+                    }
+                } else if (corefTerms.size() > 0) {
+                    for (Term corefTerm : corefTerms) {
+                        if (corefTerm.equals(term)) {
+                            continue;
+                        }
+                        for (Entity corefEntity : entityHashMultimap.get(corefTerm)) {
+                            mentions.add(mention(corefEntity, corefTerm, entityIndexes, candidates));
+                        }
+                    }
+                }
+            }
+
+            sentences.add(mentions);
+        }
+
+        return new DocumentExtraction(types, sentences);
+    }
+
+    private static Mention mention(NafDocument document, int entity, int head, int[] entityIndexes,
+            Map<Integer, List<Candidate>> candidates) {
+        int[][] spans = document.entities[entity].spans;
+        StringBuilder str = new StringBuilder();
+        if (spans.length > 0) {
+            for (int term : spans[0]) {
+                if (str.length() > 0) {
+                    str.append(' ');
+                }
+                str.append(document.termStrs[term]);
+            }
+        }
+        List<Candidate> headCandidates = candidates.get(head);
+        return new Mention(entityIndexes[entity], str.toString(),
+                headCandidates != null ? headCandidates : Collections.<Candidate>emptyList());
+    }
+
+    private static Mention mention(Entity entity, Term head, Map<Entity, Integer> entityIndexes,
+            Map<Term, List<Candidate>> candidates) {
+        List<Candidate> headCandidates = candidates.get(head);
+        return new Mention(entityIndexes.get(entity), entity.getStr(),
+                headCandidates != null ? headCandidates : Collections.<Candidate>emptyList());
+    }
+}
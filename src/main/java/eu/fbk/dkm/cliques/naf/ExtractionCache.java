@@ -0,0 +1,197 @@
+package eu.fbk.dkm.cliques.naf;
+
+import eu.fbk.dkm.cliques.naf.DocumentExtraction.Candidate;
+import eu.fbk.dkm.cliques.naf.DocumentExtraction.Mention;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Directory of {@link DocumentExtraction}s, so that unchanged documents are not parsed again. Entries are keyed by
+ * the SHA-1 of the raw file content together with the signature of the extractor, i.e. the options that change the
+ * extraction; a document whose content or options change simply gets a new entry.
+ * <p>
+ * Each entry is a small binary file, under a subdirectory named after the first two digits of its key. Entries are
+ * written to a temporary file and then moved, so concurrent workers and interrupted runs never leave partial ones.
+ * Entries that cannot be read anyway are treated as missing, so the cache never makes a run fail.
+ */
+
+public class ExtractionCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ExtractionCache.class);
+    private static final int VERSION = 1;
+
+    private final File folder;
+    private final String signature;
+    private final AtomicInteger hits = new AtomicInteger(0);
+    private final AtomicInteger misses = new AtomicInteger(0);
+
+    public ExtractionCache(File folder, String signature) {
+        this.folder = folder;
+        this.signature = signature;
+    }
+
+    public int getHits() {
+        return hits.get();
+    }
+
+    public int getMisses() {
+        return misses.get();
+    }
+
+    public String getKey(byte[] content) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        digest.update(content);
+        digest.update(signature.getBytes(StandardCharsets.UTF_8));
+
+        StringBuilder key = new StringBuilder();
+        for (byte b : digest.digest()) {
+            key.append(String.format("%02x", b & 0xff));
+        }
+        return key.toString();
+    }
+
+    /**
+     * @return the cached extraction, or null if there is none or if it cannot be read; a damaged entry (e.g. truncated
+     * by a disk fault) is deleted, so that it is extracted and written again
+     */
+    public DocumentExtraction get(String key) {
+        File file = getFile(key);
+        if (!file.exists()) {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        DocumentExtraction extraction = null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            extraction = read(in, file.length());
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Ignoring damaged cache entry {}: {}", file, e.toString());
+            if (!file.delete() && file.exists()) {
+                LOGGER.warn("Cannot delete {}", file);
+            }
+        }
+
+        if (extraction == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+        return extraction;
+    }
+
+    public void put(String key, DocumentExtraction extraction) throws IOException {
+        File file = getFile(key);
+        File folder = file.getParentFile();
+        if (!folder.isDirectory() && !folder.mkdirs() && !folder.isDirectory()) {
+            throw new IOException("Cannot create folder " + folder);
+        }
+
+        File temp = File.createTempFile(key, ".tmp", folder);
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(temp)))) {
+                out.writeInt(VERSION);
+
+                out.writeInt(extraction.getTypes().size());
+                for (Map.Entry<String, Set<String>> entry : extraction.getTypes().entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    out.writeInt(entry.getValue().size());
+                    for (String type : entry.getValue()) {
+                        out.writeUTF(type);
+                    }
+                }
+
+                out.writeInt(extraction.getSentences().size());
+                for (List<Mention> mentions : extraction.getSentences()) {
+                    out.writeInt(mentions.size());
+                    for (Mention mention : mentions) {
+                        out.writeInt(mention.getEntity());
+                        out.writeUTF(mention.getStr());
+                        out.writeInt(mention.getCandidates().size());
+                        for (Candidate candidate : mention.getCandidates()) {
+                            out.writeUTF(candidate.getReference());
+                            out.writeDouble(candidate.getConfidence());
+                        }
+                    }
+                }
+            }
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp.toPath());
+        }
+    }
+
+    /**
+     * @return the extraction, or null if it was written with another version
+     */
+    private static DocumentExtraction read(DataInputStream in, long length) throws IOException {
+        if (in.readInt() != VERSION) {
+            return null;
+        }
+
+        int typeCount = readCount(in, length);
+        Map<String, Set<String>> types = new HashMap<>();
+        for (int i = 0; i < typeCount; i++) {
+            String reference = in.readUTF();
+            int size = readCount(in, length);
+            Set<String> referenceTypes = new HashSet<>();
+            for (int j = 0; j < size; j++) {
+                referenceTypes.add(in.readUTF());
+            }
+            types.put(reference, referenceTypes);
+        }
+
+        int sentenceCount = readCount(in, length);
+        List<List<Mention>> sentences = new ArrayList<>(sentenceCount);
+        for (int i = 0; i < sentenceCount; i++) {
+            int mentionCount = readCount(in, length);
+            List<Mention> mentions = new ArrayList<>(mentionCount);
+            for (int j = 0; j < mentionCount; j++) {
+                int entity = in.readInt();
+                String str = in.readUTF();
+                int candidateCount = readCount(in, length);
+                List<Candidate> candidates = new ArrayList<>(candidateCount);
+                for (int k = 0; k < candidateCount; k++) {
+                    candidates.add(new Candidate(in.readUTF(), in.readDouble()));
+                }
+                mentions.add(new Mention(entity, str, candidates));
+            }
+            sentences.add(mentions);
+        }
+
+        if (in.read() >= 0) {
+            throw new IOException("Unexpected data after the extraction");
+        }
+        return new DocumentExtraction(types, sentences);
+    }
+
+    /**
+     * Read the number of items that follow, which cannot be more than the bytes of the file.
+     */
+    private static int readCount(DataInputStream in, long length) throws IOException {
+        int count = in.readInt();
+        if (count < 0 || count > length) {
+            throw new IOException("Invalid count " + count);
+        }
+        return count;
+    }
+
+    private File getFile(String key) {
+        return new File(new File(folder, key.substring(0, 2)), key.substring(2));
+    }
+}
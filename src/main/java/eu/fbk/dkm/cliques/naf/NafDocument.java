@@ -0,0 +1,128 @@
+package eu.fbk.dkm.cliques.naf;
+
+import java.util.List;
+
+/**
+ * The layers of a NAF document needed to extract person mentions, as read by {@link NafReader}. Words, terms and the
+ * other annotations are numbered in document order and refer to each other by number.
+ */
+
+class NafDocument {
+
+    /**
+     * Sentence of each word, from 1.
+     */
+    final int[] wfSentences;
+
+    /**
+     * Words of each term.
+     */
+    final int[][] termWFs;
+
+    /**
+     * String of each term, i.e. its words separated by spaces.
+     */
+    final String[] termStrs;
+
+    /**
+     * Term governing each term in the dependency tree, -1 for roots and terms without dependencies.
+     */
+    final int[] termGovernors;
+
+    final Entity[] entities;
+    final LinkedEntity[] linkedEntities;
+
+    /**
+     * Spans of terms of each coreference chain.
+     */
+    final int[][][] corefs;
+
+    NafDocument(int[] wfSentences, int[][] termWFs, String[] termStrs, int[] termGovernors, Entity[] entities,
+            LinkedEntity[] linkedEntities, int[][][] corefs) {
+        this.wfSentences = wfSentences;
+        this.termWFs = termWFs;
+        this.termStrs = termStrs;
+        this.termGovernors = termGovernors;
+        this.entities = entities;
+        this.linkedEntities = linkedEntities;
+        this.corefs = corefs;
+    }
+
+    int getNumSentences() {
+        int max = 0;
+        for (int sentence : wfSentences) {
+            max = Math.max(max, sentence);
+        }
+        return max;
+    }
+
+    int getTermSentence(int term) {
+        return termWFs[term].length > 0 ? wfSentences[termWFs[term][0]] : 0;
+    }
+
+    /**
+     * Get the head of a set of terms, i.e. the only one whose governor is not in the set; null if there is more than
+     * one such term, as in kaflib.
+     */
+    Integer getTermsHead(int[] terms) {
+        Integer head = null;
+        for (int term : terms) {
+            int governor = termGovernors[term];
+            if (governor < 0 || !contains(terms, governor)) {
+                if (head == null) {
+                    head = term;
+                } else if (head != term) {
+                    return null;
+                }
+            }
+        }
+        return head;
+    }
+
+    private static boolean contains(int[] array, int value) {
+        for (int element : array) {
+            if (element == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static class Entity {
+
+        final String type;
+
+        /**
+         * Terms of each span of the entity references.
+         */
+        final int[][] spans;
+
+        /**
+         * Terms of all the spans.
+         */
+        final int[] terms;
+
+        Entity(String type, int[][] spans, int[] terms) {
+            this.type = type;
+            this.spans = spans;
+            this.terms = terms;
+        }
+    }
+
+    static class LinkedEntity {
+
+        final String reference;
+        final double confidence;
+        final boolean spotted;
+        final List<String> dbpediaTypes;
+        final int[] wfs;
+
+        LinkedEntity(String reference, double confidence, boolean spotted, List<String> dbpediaTypes, int[] wfs) {
+            this.reference = reference;
+            this.confidence = confidence;
+            this.spotted = spotted;
+            this.dbpediaTypes = dbpediaTypes;
+            this.wfs = wfs;
+        }
+    }
+}
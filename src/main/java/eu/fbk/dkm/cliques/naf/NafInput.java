@@ -0,0 +1,410 @@
+package eu.fbk.dkm.cliques.naf;
+
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * A set of NAF files, read one at a time: either a folder (its .naf.gz files, recursively) or a tar, tar.gz or zip
+ * archive (its .naf and .naf.gz entries). Archives are read in a single sequential pass, which is much faster than
+ * opening millions of small files, especially on network storage.
+ */
+
+public abstract class NafInput implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(NafInput.class);
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * A NAF file, with its raw (possibly gzipped) content. The entries of archives are read in memory, as the archive
+     * moves on to the next one; files in a folder are only read in memory if their content is requested (e.g. by a
+     * cache), and streamed from disk otherwise.
+     */
+    public static class Entry {
+
+        private final String name;
+        private final File file;
+        private byte[] content;
+
+        Entry(String name, byte[] content) {
+            this.name = name;
+            this.file = null;
+            this.content = content;
+        }
+
+        Entry(File file) {
+            this.name = file.getPath();
+            this.file = file;
+            this.content = null;
+        }
+
+        /**
+         * Get the path of the file, or the archive path followed by "!/" and the entry name.
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Get the name of the file without folders.
+         */
+        public String getFileName() {
+            return name.substring(name.lastIndexOf('/') + 1);
+        }
+
+        public byte[] getContent() throws IOException {
+            if (content == null) {
+                content = Files.readAllBytes(file.toPath());
+            }
+            return content;
+        }
+
+        /**
+         * Open the content, uncompressing it if the name ends with .gz.
+         */
+        public InputStream openStream() throws IOException {
+            InputStream stream;
+            if (content != null) {
+                stream = new ByteArrayInputStream(content);
+            } else {
+                stream = new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE);
+            }
+            if (name.endsWith(".gz")) {
+                stream = new GZIPInputStream(stream);
+            }
+            return stream;
+        }
+
+        public Reader openReader() throws IOException {
+            return new InputStreamReader(openStream(), StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * @param input A folder, or an archive whose name ends with .tar, .tar.gz, .tgz or .zip
+     */
+    public static NafInput open(File input) throws IOException {
+        if (input.isDirectory()) {
+            return new FolderInput(input);
+        }
+        String name = input.getName().toLowerCase();
+        if (name.endsWith(".zip")) {
+            return new ZipInput(input);
+        }
+        if (name.endsWith(".tar")) {
+            return new TarInput(input, new BufferedInputStream(new FileInputStream(input), BUFFER_SIZE));
+        }
+        if (name.endsWith(".tar.gz") || name.endsWith(".tgz")) {
+            return new TarInput(input, new BufferedInputStream(
+                    new GZIPInputStream(new FileInputStream(input), BUFFER_SIZE), BUFFER_SIZE));
+        }
+        throw new IOException("Unsupported input " + input + ", expected a folder or a tar, tar.gz or zip file");
+    }
+
+    /**
+     * @return the next NAF file, or null at the end
+     */
+    public abstract Entry next() throws IOException;
+
+    @Override
+    public void close() throws IOException {
+    }
+
+    private static boolean isNaf(String name) {
+        return name.endsWith(".naf") || name.endsWith(".naf.gz");
+    }
+
+    private static class FolderInput extends NafInput {
+
+        private final Iterator<File> files;
+
+        FolderInput(File folder) {
+            this.files = FileUtils.iterateFiles(folder, new String[] { "naf.gz" }, true);
+        }
+
+        @Override
+        public Entry next() throws IOException {
+            if (!files.hasNext()) {
+                return null;
+            }
+            return new Entry(files.next());
+        }
+    }
+
+    private static class ZipInput extends NafInput {
+
+        private final File archive;
+        private final ZipInputStream stream;
+
+        ZipInput(File archive) throws IOException {
+            this.archive = archive;
+            this.stream = new ZipInputStream(new BufferedInputStream(new FileInputStream(archive), BUFFER_SIZE));
+        }
+
+        @Override
+        public Entry next() throws IOException {
+            ZipEntry entry;
+            while ((entry = stream.getNextEntry()) != null) {
+                if (!entry.isDirectory() && isNaf(entry.getName())) {
+                    ByteArrayOutputStream content = new ByteArrayOutputStream(
+                            entry.getSize() > 0 ? (int) entry.getSize() : 8192);
+                    byte[] buffer = new byte[8192];
+                    int read;
+                    while ((read = stream.read(buffer)) > 0) {
+                        content.write(buffer, 0, read);
+                    }
+                    return new Entry(archive.getPath() + "!/" + entry.getName(), content.toByteArray());
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public void close() throws IOException {
+            stream.close();
+        }
+    }
+
+    /**
+     * Reader of POSIX (ustar) tar archives, returning their regular files. Names longer than 100 bytes are read from
+     * GNU long name entries ('L') and pax extended headers ('x', "path" record); sizes over 8GB from base-256 size
+     * fields (GNU) and pax "size" records. Links and other special entries are skipped, as are pax global headers
+     * ('g'), which only carry defaults for metadata not used here. A hard or symbolic link from or to a NAF file is
+     * logged as a warning with its target (long targets are read from GNU 'K' entries and pax "linkpath" records),
+     * since a document only stored as a link is not read: archives should be created with --hard-dereference or
+     * --dereference if that matters.
+     */
+    private static class TarInput extends NafInput {
+
+        private static final int BLOCK_SIZE = 512;
+
+        private final File archive;
+        private final DataInputStream stream;
+        private final byte[] header = new byte[BLOCK_SIZE];
+        private int skippedLinks = 0;
+
+        TarInput(File archive, InputStream stream) {
+            this.archive = archive;
+            this.stream = new DataInputStream(stream);
+        }
+
+        @Override
+        public Entry next() throws IOException {
+            String longName = null;
+            String longLinkName = null;
+            long longSize = -1;
+            while (true) {
+                if (!readHeader()) {
+                    if (skippedLinks > 0) {
+                        LOGGER.warn("Skipped {} links to NAF files in {}", skippedLinks, archive);
+                        skippedLinks = 0;
+                    }
+                    return null;
+                }
+                String name = parseString(0, 100);
+                String prefix = parseString(345, 155);
+                if (!prefix.isEmpty() && "ustar".equals(parseString(257, 5))) {
+                    name = prefix + "/" + name;
+                }
+                long size = parseNumber(124, 12);
+                byte type = header[156];
+
+                if (type == 'L') {
+                    longName = parseLongName(readData(size));
+                    continue;
+                }
+                if (type == 'x') {
+                    Map<String, String> records = parsePaxRecords(readData(size));
+                    if (records.containsKey("path")) {
+                        longName = records.get("path");
+                    }
+                    if (records.containsKey("linkpath")) {
+                        longLinkName = records.get("linkpath");
+                    }
+                    if (records.containsKey("size")) {
+                        try {
+                            longSize = Long.parseLong(records.get("size"));
+                        } catch (NumberFormatException e) {
+                            throw new IOException("Invalid pax size in " + archive, e);
+                        }
+                    }
+                    continue;
+                }
+                if (type == 'K') {
+                    longLinkName = parseLongName(readData(size));
+                    continue;
+                }
+                if (type == 'g') {
+                    skipData(size);
+                    continue;
+                }
+
+                if (longName != null) {
+                    name = longName;
+                }
+                if (longSize >= 0) {
+                    size = longSize;
+                }
+                String linkName = longLinkName != null ? longLinkName : parseString(157, 100);
+                longName = null;
+                longLinkName = null;
+                longSize = -1;
+                if ((type == '0' || type == 0 || type == '7') && isNaf(name)) {
+                    return new Entry(archive.getPath() + "!/" + name, readData(size));
+                }
+                if ((type == '1' || type == '2') && (isNaf(name) || isNaf(linkName))) {
+                    LOGGER.warn("Skipped {} link {} -> {} in {}", new Object[] { type == '1' ? "hard" : "symbolic",
+                            name, linkName, archive });
+                    skippedLinks++;
+                }
+                skipData(size);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            stream.close();
+        }
+
+        /**
+         * @return false at the end of the archive, marked by an empty block (or by the end of the file)
+         */
+        private boolean readHeader() throws IOException {
+            int read = 0;
+            while (read < BLOCK_SIZE) {
+                int n = stream.read(header, read, BLOCK_SIZE - read);
+                if (n < 0) {
+                    if (read == 0) {
+                        return false;
+                    }
+                    throw new EOFException("Truncated tar header in " + archive);
+                }
+                read += n;
+            }
+            for (byte b : header) {
+                if (b != 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private byte[] readData(long size) throws IOException {
+            if (size > Integer.MAX_VALUE - BLOCK_SIZE) {
+                throw new IOException("Entry too large in " + archive);
+            }
+            byte[] data = new byte[(int) size];
+            stream.readFully(data);
+            skipFully(padding(size));
+            return data;
+        }
+
+        private void skipData(long size) throws IOException {
+            skipFully(size + padding(size));
+        }
+
+        private static long padding(long size) {
+            return (BLOCK_SIZE - size % BLOCK_SIZE) % BLOCK_SIZE;
+        }
+
+        private void skipFully(long count) throws IOException {
+            while (count > 0) {
+                long skipped = stream.skip(count);
+                if (skipped <= 0) {
+                    if (stream.read() < 0) {
+                        throw new EOFException("Truncated tar entry in " + archive);
+                    }
+                    skipped = 1;
+                }
+                count -= skipped;
+            }
+        }
+
+        private String parseString(int offset, int length) {
+            int end = offset;
+            while (end < offset + length && header[end] != 0) {
+                end++;
+            }
+            return new String(header, offset, end - offset, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Parse an octal number, or a base-256 one if the first bit is set (GNU extension for sizes over 8GB).
+         */
+        private long parseNumber(int offset, int length) throws IOException {
+            if ((header[offset] & 0x80) != 0) {
+                long value = header[offset] & 0x7f;
+                for (int i = offset + 1; i < offset + length; i++) {
+                    value = value << 8 | header[i] & 0xff;
+                }
+                return value;
+            }
+            long value = 0;
+            for (int i = offset; i < offset + length; i++) {
+                byte b = header[i];
+                if (b == 0 || b == ' ') {
+                    if (value > 0) {
+                        break;
+                    }
+                    continue;
+                }
+                if (b < '0' || b > '7') {
+                    throw new IOException("Invalid tar header in " + archive);
+                }
+                value = value * 8 + (b - '0');
+            }
+            return value;
+        }
+
+        private static String parseLongName(byte[] data) {
+            int end = 0;
+            while (end < data.length && data[end] != 0) {
+                end++;
+            }
+            return new String(data, 0, end, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Parse the records of a pax header, each made of "length key=value\n" with the length in bytes.
+         */
+        private Map<String, String> parsePaxRecords(byte[] data) throws IOException {
+            Map<String, String> records = new HashMap<>();
+            int offset = 0;
+            while (offset < data.length) {
+                int space = offset;
+                while (space < data.length && data[space] != ' ') {
+                    space++;
+                }
+                int length;
+                try {
+                    length = Integer.parseInt(new String(data, offset, space - offset, StandardCharsets.US_ASCII));
+                } catch (NumberFormatException e) {
+                    if (space - offset == 0 || data[offset] == 0) {
+                        break; // Padding
+                    }
+                    throw new IOException("Invalid pax header in " + archive, e);
+                }
+                if (length <= space - offset + 1 || offset + length > data.length) {
+                    throw new IOException("Invalid pax header in " + archive);
+                }
+                String record = new String(data, space + 1, offset + length - space - 2, StandardCharsets.UTF_8);
+                int equals = record.indexOf('=');
+                if (equals > 0) {
+                    records.put(record.substring(0, equals), record.substring(equals + 1));
+                }
+                offset += length;
+            }
+            return records;
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package eu.fbk.dkm.cliques.naf;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Reads and extracts a set of NAF files (gzipped if their name ends with .gz) from a {@link NafInput}, passing the
+ * extractions to a handler in the order of the files.
+ * <p>
+ * With more than one thread, a reader thread loads the files into a bounded queue, worker threads parse and extract
+ * them, and the calling thread merges the results, waiting for the next file in order when results come out of
+ * order. The handler is thus always called by the same thread and in the same order as in the sequential case, so
+ * the output does not depend on the number of threads. The number of files in flight is bounded as well, so a slow
+ * document does not let the others pile up in memory.
+ * <p>
+ * With an {@link ExtractionCache}, documents already extracted with the same options are read from it instead.
+ */
+
+public class NafPipeline {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(NafPipeline.class);
+    private static final int QUEUE_SIZE_PER_THREAD = 4;
+
+    private final DocumentExtractor extractor;
+    private final int threads;
+    private final ExtractionCache cache;
+
+    public NafPipeline(DocumentExtractor extractor, int threads) {
+        this(extractor, threads, null);
+    }
+
+    /**
+     * @param cache The cache of extractions, or null to always parse the documents
+     */
+    public NafPipeline(DocumentExtractor extractor, int threads, ExtractionCache cache) {
+        this.extractor = extractor;
+        this.threads = threads;
+        this.cache = cache;
+    }
+
+    /**
+     * Called with the extraction of each file, in order.
+     */
+    public interface Handler {
+
+        void handle(String name, DocumentExtraction extraction) throws IOException;
+
+    }
+
+    public void run(NafInput input, Handler handler) throws IOException {
+        if (threads <= 1) {
+            NafInput.Entry entry;
+            while ((entry = input.next()) != null) {
+                LOGGER.debug(entry.getName());
+                handler.handle(entry.getName(), extract(entry));
+            }
+            return;
+        }
+
+        int capacity = threads * QUEUE_SIZE_PER_THREAD;
+        BlockingQueue<Task> tasks = new ArrayBlockingQueue<>(capacity);
+        BlockingQueue<Result> results = new LinkedBlockingQueue<>();
+        Semaphore inFlight = new Semaphore(capacity * 2);
+
+        List<Thread> workers = new ArrayList<>();
+        workers.add(new Thread(() -> read(input, tasks, results, inFlight), "naf-reader"));
+        for (int i = 0; i < threads; i++) {
+            workers.add(new Thread(() -> work(tasks, results), "naf-worker-" + i));
+        }
+        for (Thread worker : workers) {
+            worker.setDaemon(true);
+            worker.start();
+        }
+
+        Map<Integer, Result> pending = new HashMap<>();
+        int next = 0;
+        int total = -1;
+        try {
+            while (total < 0 || next < total) {
+                Result result = results.take();
+                if (result.name == null) {
+                    if (result.error != null) {
+                        throw rethrow(result.error, "Cannot read NAF files");
+                    }
+                    total = result.index;
+                    continue;
+                }
+
+                pending.put(result.index, result);
+                while ((result = pending.remove(next)) != null) {
+                    if (result.error != null) {
+                        throw rethrow(result.error, "Cannot parse " + result.name);
+                    }
+                    LOGGER.debug(result.name);
+                    handler.handle(result.name, result.extraction);
+                    inFlight.release();
+                    next++;
+                }
+            }
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException();
+        } finally {
+            for (Thread worker : workers) {
+                worker.interrupt();
+            }
+        }
+    }
+
+    private void read(NafInput input, BlockingQueue<Task> tasks, BlockingQueue<Result> results,
+            Semaphore inFlight) {
+        int index = 0;
+        try {
+            while (true) {
+                inFlight.acquire();
+                NafInput.Entry entry = input.next();
+                if (entry == null) {
+                    break;
+                }
+                tasks.put(new Task(index++, entry));
+            }
+            results.add(new Result(index, null, null, null));
+            for (int i = 0; i < threads; i++) {
+                tasks.put(Task.END);
+            }
+        } catch (InterruptedException e) {
+            // Stopped by the merger
+        } catch (Throwable e) {
+            results.add(new Result(index, null, null, e));
+        }
+    }
+
+    private void work(BlockingQueue<Task> tasks, BlockingQueue<Result> results) {
+        try {
+            while (true) {
+                Task task = tasks.take();
+                if (task == Task.END) {
+                    return;
+                }
+                Result result;
+                try {
+                    result = new Result(task.index, task.entry.getName(), extract(task.entry), null);
+                } catch (Throwable e) {
+                    result = new Result(task.index, task.entry.getName(), null, e);
+                }
+                results.add(result);
+            }
+        } catch (InterruptedException e) {
+            // Stopped by the merger
+        }
+    }
+
+    private DocumentExtraction extract(NafInput.Entry entry) throws IOException {
+        if (cache == null) {
+            return parse(entry);
+        }
+        String key = cache.getKey(entry.getContent());
+        DocumentExtraction extraction = cache.get(key);
+        if (extraction == null) {
+            extraction = parse(entry);
+            cache.put(key, extraction);
+        }
+        return extraction;
+    }
+
+    private DocumentExtraction parse(NafInput.Entry entry) throws IOException {
+        try (Reader reader = entry.openReader()) {
+            return extractor.extract(reader);
+        } catch (IOException e) {
+            throw new IOException("Cannot parse " + entry.getName(), e);
+        }
+    }
+
+    private static IOException rethrow(Throwable error, String message) {
+        if (error instanceof IOException) {
+            return (IOException) error;
+        }
+        if (error instanceof RuntimeException) {
+            throw (RuntimeException) error;
+        }
+        if (error instanceof Error) {
+            throw (Error) error;
+        }
+        return new IOException(message, error);
+    }
+
+    private static class Task {
+
+        static final Task END = new Task(-1, null);
+
+        final int index;
+        final NafInput.Entry entry;
+
+        Task(int index, NafInput.Entry entry) {
+            this.index = index;
+            this.entry = entry;
+        }
+    }
+
+    /**
+     * The extraction of a file, or the error raised; without a name, the end of the input (with the number of files).
+     */
+    private static class Result {
+
+        final int index;
+        final String name;
+        final DocumentExtraction extraction;
+        final Throwable error;
+
+        Result(int index, String name, DocumentExtraction extraction, Throwable error) {
+            this.index = index;
+            this.name = name;
+            this.extraction = extraction;
+            this.error = error;
+        }
+    }
+}
@@ -0,0 +1,318 @@
+package eu.fbk.dkm.cliques.naf;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.Reader;
+import java.util.*;
+
+/**
+ * Streaming reader of the NAF layers in {@link NafDocument}: text, terms, deps, entities, linkedEntities and
+ * coreferences. The other layers (raw text, SRL, constituency, ...) are skipped without building any object, and
+ * the ones read are stored as arrays of numbers instead of the kaflib object model.
+ * <p>
+ * The semantics of kaflib are kept where the extraction depends on them: the string of a term is made of its words
+ * separated by spaces, the string of an entity is the one of its first span, and the sentence of a term is the one
+ * of its first word.
+ */
+
+class NafReader {
+
+    private static final ThreadLocal<XMLInputFactory> FACTORY = ThreadLocal.withInitial(() -> {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    });
+
+    private final Map<String, Integer> wfIds = new HashMap<>();
+    private final Map<String, Integer> termIds = new HashMap<>();
+    private int[] wfSentences = new int[1024];
+    private final List<String> wfForms = new ArrayList<>();
+    private final List<int[]> termWFs = new ArrayList<>();
+    private final List<int[]> deps = new ArrayList<>();
+    private final List<NafDocument.Entity> entities = new ArrayList<>();
+    private final List<NafDocument.LinkedEntity> linkedEntities = new ArrayList<>();
+    private final List<int[][]> corefs = new ArrayList<>();
+    private int[] buffer = new int[16];
+
+    private NafReader() {
+    }
+
+    static NafDocument read(Reader in) throws XMLStreamException {
+        XMLStreamReader reader = FACTORY.get().createXMLStreamReader(in);
+        try {
+            return new NafReader().readDocument(reader);
+        } finally {
+            reader.close();
+        }
+    }
+
+    private NafDocument readDocument(XMLStreamReader reader) throws XMLStreamException {
+        while (reader.next() != XMLStreamConstants.START_ELEMENT) {
+            // Prolog
+        }
+        while (nextChild(reader)) {
+            switch (reader.getLocalName()) {
+            case "text":
+                readText(reader);
+                break;
+            case "terms":
+                readTerms(reader);
+                break;
+            case "deps":
+                readDeps(reader);
+                break;
+            case "entities":
+                readEntities(reader);
+                break;
+            case "linkedEntities":
+                readLinkedEntities(reader);
+                break;
+            case "coreferences":
+                readCoreferences(reader);
+                break;
+            default:
+                skip(reader);
+            }
+        }
+
+        int termCount = termWFs.size();
+        String[] termStrs = new String[termCount];
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < termCount; i++) {
+            builder.setLength(0);
+            for (int wf : termWFs.get(i)) {
+                if (builder.length() > 0) {
+                    builder.append(' ');
+                }
+                builder.append(wfForms.get(wf));
+            }
+            termStrs[i] = builder.toString();
+        }
+
+        int[] termGovernors = new int[termCount];
+        Arrays.fill(termGovernors, -1);
+        for (int[] dep : deps) {
+            termGovernors[dep[1]] = dep[0];
+        }
+
+        return new NafDocument(Arrays.copyOf(wfSentences, wfForms.size()), termWFs.toArray(new int[termCount][]),
+                termStrs, termGovernors, entities.toArray(new NafDocument.Entity[entities.size()]),
+                linkedEntities.toArray(new NafDocument.LinkedEntity[linkedEntities.size()]),
+                corefs.toArray(new int[corefs.size()][][]));
+    }
+
+    private void readText(XMLStreamReader reader) throws XMLStreamException {
+        while (nextChild(reader)) {
+            if (!reader.getLocalName().equals("wf")) {
+                skip(reader);
+                continue;
+            }
+            int index = wfForms.size();
+            wfIds.put(getId(reader), index);
+            if (index == wfSentences.length) {
+                wfSentences = Arrays.copyOf(wfSentences, index * 2);
+            }
+            String sent = reader.getAttributeValue(null, "sent");
+            wfSentences[index] = sent != null ? parseInt(reader, sent) : 0;
+            wfForms.add(reader.getElementText());
+        }
+    }
+
+    private void readTerms(XMLStreamReader reader) throws XMLStreamException {
+        while (nextChild(reader)) {
+            if (!reader.getLocalName().equals("term")) {
+                skip(reader);
+                continue;
+            }
+            termIds.put(getId(reader), termWFs.size());
+            int[] wfs = new int[0];
+            while (nextChild(reader)) {
+                if (reader.getLocalName().equals("span")) {
+                    wfs = readSpan(reader, wfIds);
+                } else {
+                    skip(reader);
+                }
+            }
+            termWFs.add(wfs);
+        }
+    }
+
+    private void readDeps(XMLStreamReader reader) throws XMLStreamException {
+        while (nextChild(reader)) {
+            if (reader.getLocalName().equals("dep")) {
+                int from = resolve(reader, termIds, reader.getAttributeValue(null, "from"));
+                int to = resolve(reader, termIds, reader.getAttributeValue(null, "to"));
+                deps.add(new int[] { from, to });
+            }
+            skip(reader);
+        }
+    }
+
+    private void readEntities(XMLStreamReader reader) throws XMLStreamException {
+        while (nextChild(reader)) {
+            if (!reader.getLocalName().equals("entity")) {
+                skip(reader);
+                continue;
+            }
+            String type = reader.getAttributeValue(null, "type");
+            List<int[]> spans = new ArrayList<>();
+            while (nextChild(reader)) {
+                if (!reader.getLocalName().equals("references")) {
+                    skip(reader);
+                    continue;
+                }
+                while (nextChild(reader)) {
+                    if (reader.getLocalName().equals("span")) {
+                        spans.add(readSpan(reader, termIds));
+                    } else {
+                        skip(reader);
+                    }
+                }
+            }
+
+            int size = 0;
+            for (int[] span : spans) {
+                size += span.length;
+            }
+            int[] terms = new int[size];
+            size = 0;
+            for (int[] span : spans) {
+                System.arraycopy(span, 0, terms, size, span.length);
+                size += span.length;
+            }
+            entities.add(new NafDocument.Entity(type != null ? type : "", spans.toArray(new int[spans.size()][]),
+                    terms));
+        }
+    }
+
+    private void readLinkedEntities(XMLStreamReader reader) throws XMLStreamException {
+        while (nextChild(reader)) {
+            if (!reader.getLocalName().equals("linkedEntity")) {
+                skip(reader);
+                continue;
+            }
+            String reference = reader.getAttributeValue(null, "reference");
+            String confidence = reader.getAttributeValue(null, "confidence");
+            boolean spotted = "true".equals(reader.getAttributeValue(null, "spotted"));
+            List<String> dbpediaTypes = new ArrayList<>();
+            int[] wfs = new int[0];
+            while (nextChild(reader)) {
+                String name = reader.getLocalName();
+                if (name.equals("span")) {
+                    wfs = readSpan(reader, wfIds);
+                } else if (name.equals("types")) {
+                    while (nextChild(reader)) {
+                        if (reader.getLocalName().equals("type")
+                                && "DBPEDIA".equals(reader.getAttributeValue(null, "source"))) {
+                            dbpediaTypes.add(reader.getAttributeValue(null, "label"));
+                        }
+                        skip(reader);
+                    }
+                } else {
+                    skip(reader);
+                }
+            }
+            linkedEntities.add(new NafDocument.LinkedEntity(reference,
+                    confidence != null ? parseDouble(reader, confidence) : 0, spotted, dbpediaTypes, wfs));
+        }
+    }
+
+    private void readCoreferences(XMLStreamReader reader) throws XMLStreamException {
+        while (nextChild(reader)) {
+            if (!reader.getLocalName().equals("coref")) {
+                skip(reader);
+                continue;
+            }
+            List<int[]> spans = new ArrayList<>();
+            while (nextChild(reader)) {
+                if (reader.getLocalName().equals("span")) {
+                    spans.add(readSpan(reader, termIds));
+                } else {
+                    skip(reader);
+                }
+            }
+            corefs.add(spans.toArray(new int[spans.size()][]));
+        }
+    }
+
+    private int[] readSpan(XMLStreamReader reader, Map<String, Integer> ids) throws XMLStreamException {
+        int size = 0;
+        while (nextChild(reader)) {
+            if (reader.getLocalName().equals("target")) {
+                if (size == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, size * 2);
+                }
+                buffer[size++] = resolve(reader, ids, getId(reader));
+            }
+            skip(reader);
+        }
+        return Arrays.copyOf(buffer, size);
+    }
+
+    /**
+     * Move to the next child of the current element, skipping text; false if the element ends first. The previous
+     * child must have been consumed up to its end tag.
+     */
+    private static boolean nextChild(XMLStreamReader reader) throws XMLStreamException {
+        while (true) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                return true;
+            }
+            if (event == XMLStreamConstants.END_ELEMENT || event == XMLStreamConstants.END_DOCUMENT) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Consume the current element up to its end tag.
+     */
+    private static void skip(XMLStreamReader reader) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
+    private static String getId(XMLStreamReader reader) throws XMLStreamException {
+        String id = reader.getAttributeValue(null, "id");
+        if (id == null) {
+            throw new XMLStreamException("Missing id in " + reader.getLocalName(), reader.getLocation());
+        }
+        return id;
+    }
+
+    private static int resolve(XMLStreamReader reader, Map<String, Integer> ids, String id)
+            throws XMLStreamException {
+        Integer index = id != null ? ids.get(id) : null;
+        if (index == null) {
+            throw new XMLStreamException("Unknown id " + id, reader.getLocation());
+        }
+        return index;
+    }
+
+    private static int parseInt(XMLStreamReader reader, String value) throws XMLStreamException {
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new XMLStreamException("Invalid number " + value, reader.getLocation());
+        }
+    }
+
+    private static double parseDouble(XMLStreamReader reader, String value) throws XMLStreamException {
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            throw new XMLStreamException("Invalid number " + value, reader.getLocation());
+        }
+    }
+}
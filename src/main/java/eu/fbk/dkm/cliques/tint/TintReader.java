@@ -0,0 +1,123 @@
+package eu.fbk.dkm.cliques.tint;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Streaming reader of the Tint JSON output, passing to a handler the tokens of each sentence (with their original
+ * text and whether they are tagged as persons) and the linkings of the document.
+ * <p>
+ * Only the fields used are decoded, token by token: everything else (other token fields, parse trees, coreference
+ * chains, ...) is skipped, so no string with the whole file and no tree of the document are built.
+ */
+
+public class TintReader {
+
+    private static final String PERSON_TAG = "PER";
+
+    /**
+     * Called while reading a document, in the order of the file. Linkings may come before the sentences.
+     */
+    public interface Handler {
+
+        void token(String form, boolean person) throws IOException;
+
+        void endSentence() throws IOException;
+
+        void linking(String page, String form) throws IOException;
+
+    }
+
+    public static void read(Reader in, Handler handler) throws IOException {
+        JsonReader reader = new JsonReader(in);
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (name.equals("sentences") && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    readSentence(reader, handler);
+                }
+                reader.endArray();
+            } else if (name.equals("linkings") && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    readLinking(reader, handler);
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    private static void readSentence(JsonReader reader, Handler handler) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (reader.nextName().equals("tokens") && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    readToken(reader, handler);
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        handler.endSentence();
+    }
+
+    private static void readToken(JsonReader reader, Handler handler) throws IOException {
+        boolean person = false;
+        String form = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (name.equals("ner")) {
+                person = PERSON_TAG.equals(nextString(reader));
+            } else if (name.equals("originalText")) {
+                form = nextString(reader);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        if (form == null) {
+            throw new IOException("Token without originalText at " + reader.getPath());
+        }
+        handler.token(form, person);
+    }
+
+    private static void readLinking(JsonReader reader, Handler handler) throws IOException {
+        String page = null;
+        String form = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (name.equals("page")) {
+                page = nextString(reader);
+            } else if (name.equals("originalText")) {
+                form = nextString(reader);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        if (page != null && form != null) {
+            handler.linking(page, form);
+        }
+    }
+
+    private static String nextString(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        return reader.nextString();
+    }
+}
@@ -0,0 +1,174 @@
+package eu.fbk.dkm.cliques.util;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVRecord;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Year of birth of DBpedia pages, read from the Wikidata dates file (tab-separated, with the page id in the second
+ * column and the year in the third one, "null" if unknown).
+ * <p>
+ * The index is a sorted table that can be built once with {@link #write(File, File)} and then mapped in memory, so
+ * it takes no heap and no time to load. Lookups are binary searches comparing the page id with the UTF-8 keys byte
+ * by byte, without creating objects.
+ * <p>
+ * All numbers are big-endian. After a magic number and a version, the file contains the number of pages n, the n + 1
+ * offsets of the keys in the key area, the n years and the key area, with the UTF-8 page ids in byte order.
+ */
+
+public class BirthYearIndex {
+
+    /**
+     * Returned for pages without a year of birth.
+     */
+    public static final int NONE = Integer.MIN_VALUE;
+
+    private static final String PAGE_PREFIX = "http://dbpedia.org/resource/";
+    private static final int MAGIC = 0x434c5144;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 12;
+
+    private final ByteBuffer buffer;
+    private final int size;
+    private final int yearsStart;
+    private final int keysStart;
+
+    private BirthYearIndex(ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.size = buffer.getInt(8);
+        this.yearsStart = HEADER_SIZE + (size + 1) * 4;
+        this.keysStart = yearsStart + size * 4;
+    }
+
+    /**
+     * Open an index written with {@link #write(File, File)}, or build one in memory from a dates file.
+     */
+    public static BirthYearIndex open(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(4);
+            if (channel.read(magic, 0) == 4 && magic.getInt(0) == MAGIC) {
+                if (channel.size() > Integer.MAX_VALUE) {
+                    throw new IOException("Dates index too large to be mapped: " + file);
+                }
+                ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                int version = buffer.getInt(4);
+                if (version != VERSION) {
+                    throw new IOException("Unsupported dates index version " + version + ": " + file);
+                }
+                return new BirthYearIndex(buffer);
+            }
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            write(readDates(file), out);
+        }
+        return new BirthYearIndex(ByteBuffer.wrap(bytes.toByteArray()));
+    }
+
+    /**
+     * Build the index of a dates file.
+     *
+     * @return the number of pages indexed
+     */
+    public static int write(File datesFile, File indexFile) throws IOException {
+        List<Entry> entries = readDates(datesFile);
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(indexFile)))) {
+            return write(entries, out);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param reference The URI of a DBpedia page
+     * @return the year of birth, or {@link #NONE}
+     */
+    public int get(String reference) {
+        if (!reference.startsWith(PAGE_PREFIX)) {
+            return NONE;
+        }
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int compare = Utf8.compare(reference, PAGE_PREFIX.length(), buffer,
+                    keysStart + buffer.getInt(HEADER_SIZE + middle * 4),
+                    keysStart + buffer.getInt(HEADER_SIZE + middle * 4 + 4));
+            if (compare > 0) {
+                low = middle + 1;
+            } else if (compare < 0) {
+                high = middle - 1;
+            } else {
+                return buffer.getInt(yearsStart + middle * 4);
+            }
+        }
+        return NONE;
+    }
+
+    private static List<Entry> readDates(File file) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        try (Reader in = new BufferedReader(new FileReader(file))) {
+            for (CSVRecord record : CSVFormat.newFormat('\t').parse(in)) {
+                String pageID = record.get(1);
+                if (record.get(2) != null && !record.get(2).equals("null")) {
+                    entries.add(new Entry(pageID.getBytes(StandardCharsets.UTF_8), Integer.parseInt(record.get(2))));
+                }
+            }
+        }
+        return entries;
+    }
+
+    private static int write(List<Entry> entries, DataOutputStream out) throws IOException {
+        Entry[] sorted = entries.toArray(new Entry[entries.size()]);
+        Arrays.sort(sorted, (e1, e2) -> Utf8.compare(e1.key, e2.key));
+
+        // Sorting is stable: as with a map, the last year of a page wins
+        List<Entry> unique = new ArrayList<>(sorted.length);
+        for (int i = 0; i < sorted.length; i++) {
+            if (i + 1 < sorted.length && Utf8.compare(sorted[i].key, sorted[i + 1].key) == 0) {
+                continue;
+            }
+            unique.add(sorted[i]);
+        }
+
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(unique.size());
+        int offset = 0;
+        out.writeInt(offset);
+        for (Entry entry : unique) {
+            offset += entry.key.length;
+            out.writeInt(offset);
+        }
+        for (Entry entry : unique) {
+            out.writeInt(entry.year);
+        }
+        for (Entry entry : unique) {
+            out.write(entry.key);
+        }
+        return unique.size();
+    }
+
+    private static class Entry {
+
+        final byte[] key;
+        final int year;
+
+        Entry(byte[] key, int year) {
+            this.key = key;
+            this.year = year;
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package eu.fbk.dkm.cliques.util;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVRecord;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cluster of each name form, compiled from the clusters file (tab-separated, with the cluster name followed by its
+ * forms) and the cluster mappings file (form and another form whose cluster it gets).
+ * <p>
+ * The dictionary is a sorted table of the UTF-8 forms with the id of their cluster, followed by the cluster names.
+ * It can be written once and then mapped by every tool with {@link #open(File)}, which keeps a single copy of each
+ * file per process. Only the cluster names are decoded, once, so lookups return the same strings and create no
+ * objects.
+ * <p>
+ * All numbers are big-endian. After a magic number and a version, the file contains the number of forms n and of
+ * clusters m, the n + 1 offsets of the forms, the n cluster ids, the m + 1 offsets of the cluster names, the UTF-8
+ * forms in byte order and the UTF-8 cluster names.
+ */
+
+public class ClusterDictionary {
+
+    private static final int MAGIC = 0x434c5143;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final Map<String, ClusterDictionary> OPEN = new ConcurrentHashMap<>();
+
+    private final ByteBuffer buffer;
+    private final int size;
+    private final int idsStart;
+    private final int formsStart;
+    private final String[] clusters;
+
+    private ClusterDictionary(ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.size = buffer.getInt(8);
+        this.clusters = new String[buffer.getInt(12)];
+        this.idsStart = HEADER_SIZE + (size + 1) * 4;
+        int clusterOffsetsStart = idsStart + size * 4;
+        this.formsStart = clusterOffsetsStart + (clusters.length + 1) * 4;
+
+        int clustersStart = formsStart + buffer.getInt(HEADER_SIZE + size * 4);
+        byte[] bytes = new byte[buffer.getInt(clusterOffsetsStart + clusters.length * 4)];
+        ByteBuffer names = buffer.duplicate();
+        names.position(clustersStart);
+        names.get(bytes);
+        for (int i = 0; i < clusters.length; i++) {
+            int start = buffer.getInt(clusterOffsetsStart + i * 4);
+            int end = buffer.getInt(clusterOffsetsStart + i * 4 + 4);
+            clusters[i] = new String(bytes, start, end - start, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Open a dictionary written with {@link #write(File)}, sharing it with the other users of the same file.
+     */
+    public static ClusterDictionary open(File file) throws IOException {
+        String key = file.getCanonicalPath();
+        ClusterDictionary dictionary = OPEN.get(key);
+        if (dictionary == null) {
+            dictionary = map(file);
+            ClusterDictionary previous = OPEN.putIfAbsent(key, dictionary);
+            if (previous != null) {
+                dictionary = previous;
+            }
+        }
+        return dictionary;
+    }
+
+    /**
+     * Compile the dictionary of a clusters file and a cluster mappings file.
+     *
+     * @param clustersFile The clusters file, or null for an empty dictionary
+     * @param mappingsFile The cluster mappings file, or null
+     */
+    public static ClusterDictionary compile(File clustersFile, File mappingsFile) throws IOException {
+        Map<String, String> clusters = new HashMap<>();
+        Reader in;
+        if (clustersFile != null) {
+            in = new FileReader(clustersFile);
+            for (CSVRecord record : CSVFormat.newFormat('\t').parse(in)) {
+                String clusterName = record.get(0);
+                for (int i = 1; i < record.size(); i++) {
+                    clusters.put(record.get(i), clusterName);
+                }
+            }
+            in.close();
+        }
+        if (mappingsFile != null) {
+            in = new FileReader(mappingsFile);
+            for (CSVRecord record : CSVFormat.newFormat('\t').parse(in)) {
+                String cluster = clusters.get(record.get(1));
+                if (cluster != null) {
+                    clusters.put(record.get(0), cluster);
+                }
+            }
+            in.close();
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            write(clusters, out);
+        }
+        return new ClusterDictionary(ByteBuffer.wrap(bytes.toByteArray()));
+    }
+
+    public void write(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer content = buffer.duplicate();
+            content.position(0);
+            while (content.hasRemaining()) {
+                channel.write(content);
+            }
+        }
+    }
+
+    /**
+     * Get the number of forms.
+     */
+    public int size() {
+        return size;
+    }
+
+    public int getClusterCount() {
+        return clusters.length;
+    }
+
+    /**
+     * @return the name of the cluster of a form, or null if the form has no cluster
+     */
+    public String get(String form) {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int compare = Utf8.compare(form, 0, buffer, formsStart + buffer.getInt(HEADER_SIZE + middle * 4),
+                    formsStart + buffer.getInt(HEADER_SIZE + middle * 4 + 4));
+            if (compare > 0) {
+                low = middle + 1;
+            } else if (compare < 0) {
+                high = middle - 1;
+            } else {
+                return clusters[buffer.getInt(idsStart + middle * 4)];
+            }
+        }
+        return null;
+    }
+
+    private static ClusterDictionary map(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Cluster dictionary too large to be mapped: " + file);
+            }
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+                throw new IOException("Not a cluster dictionary: " + file);
+            }
+            int version = buffer.getInt(4);
+            if (version != VERSION) {
+                throw new IOException("Unsupported cluster dictionary version " + version + ": " + file);
+            }
+            return new ClusterDictionary(buffer);
+        }
+    }
+
+    private static void write(Map<String, String> clusters, DataOutputStream out) throws IOException {
+        byte[][] forms = new byte[clusters.size()][];
+        String[] formClusters = new String[forms.length];
+        Integer[] order = new Integer[forms.length];
+        int i = 0;
+        for (Map.Entry<String, String> entry : clusters.entrySet()) {
+            forms[i] = entry.getKey().getBytes(StandardCharsets.UTF_8);
+            formClusters[i] = entry.getValue();
+            order[i] = i;
+            i++;
+        }
+        Arrays.sort(order, (i1, i2) -> Utf8.compare(forms[i1], forms[i2]));
+
+        Map<String, Integer> clusterIds = new LinkedHashMap<>();
+        for (String cluster : formClusters) {
+            clusterIds.putIfAbsent(cluster, clusterIds.size());
+        }
+        byte[][] names = new byte[clusterIds.size()][];
+        for (Map.Entry<String, Integer> entry : clusterIds.entrySet()) {
+            names[entry.getValue()] = entry.getKey().getBytes(StandardCharsets.UTF_8);
+        }
+
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(forms.length);
+        out.writeInt(names.length);
+        int offset = 0;
+        out.writeInt(offset);
+        for (int form : order) {
+            offset += forms[form].length;
+            out.writeInt(offset);
+        }
+        for (int form : order) {
+            out.writeInt(clusterIds.get(formClusters[form]));
+        }
+        offset = 0;
+        out.writeInt(offset);
+        for (byte[] name : names) {
+            offset += name.length;
+            out.writeInt(offset);
+        }
+        for (int form : order) {
+            out.write(forms[form]);
+        }
+        for (byte[] name : names) {
+            out.write(name);
+        }
+    }
+}
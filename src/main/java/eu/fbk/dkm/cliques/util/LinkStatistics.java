@@ -0,0 +1,231 @@
+package eu.fbk.dkm.cliques.util;
+
+import java.util.*;
+
+/**
+ * Statistics of the links of each cluster to DBpedia pages: how many mentions were linked to each page, and the sum
+ * and maximum of their confidence. Links are ranked by count, then by maximum confidence.
+ * <p>
+ * {@code ExtractGraph} adds each linked entity once per sentence, however many coreferring mentions repeat it: the
+ * count of a page is the number of (sentence, entity) pairs of the cluster linked to it, and the confidence
+ * statistics are over the same pairs.
+ * <p>
+ * Cluster and page names are interned once; the links are kept in per-cluster primitive arrays, found through a
+ * single {@link LongIntHashMap} keyed by the (cluster, page) pair. With a maximum number of links per cluster, a new
+ * page replaces the one with the lowest count and inherits its count, as in the Space-Saving algorithm: counts
+ * become upper bounds, but the most frequent pages are kept with bounded memory. The inherited count is kept as the
+ * error of the link, so that the count minus the error is a lower bound, and the mean confidence is computed over the
+ * links of the page only. Accumulators filled by different threads can be merged, summing counts and errors.
+ */
+
+public class LinkStatistics {
+
+    private final int maxLinksPerCluster;
+    private final Map<String, Integer> clusterIds = new HashMap<>();
+    private final List<String> clusters = new ArrayList<>();
+    private final List<Links> clusterLinks = new ArrayList<>();
+    private final Map<String, Integer> pageIds = new HashMap<>();
+    private final List<String> pages = new ArrayList<>();
+    private final LongIntHashMap indexes = new LongIntHashMap();
+
+    public LinkStatistics() {
+        this(0);
+    }
+
+    /**
+     * @param maxLinksPerCluster The number of links to keep for each cluster, 0 to keep them all
+     */
+    public LinkStatistics(int maxLinksPerCluster) {
+        this.maxLinksPerCluster = maxLinksPerCluster;
+    }
+
+    /**
+     * A page linked to a cluster.
+     */
+    public static class Link {
+
+        private final String page;
+        private final int count;
+        private final int error;
+        private final double sum;
+        private final double max;
+
+        public Link(String page, int count, double sum, double max) {
+            this(page, count, 0, sum, max);
+        }
+
+        public Link(String page, int count, int error, double sum, double max) {
+            this.page = page;
+            this.count = count;
+            this.error = error;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        public String getPage() {
+            return page;
+        }
+
+        /**
+         * Get the number of mentions of the cluster linked to the page.
+         */
+        public int getCount() {
+            return count;
+        }
+
+        /**
+         * Get the count inherited from the pages this one replaced, 0 if it never replaced any: at least {@code
+         * getCount() - getError()} mentions are linked to the page.
+         */
+        public int getError() {
+            return error;
+        }
+
+        /**
+         * Get the sum of the confidence of the links, not including the ones of the pages this one replaced.
+         */
+        public double getSum() {
+            return sum;
+        }
+
+        public double getMean() {
+            return sum / (count - error);
+        }
+
+        public double getMax() {
+            return max;
+        }
+    }
+
+    public void add(String cluster, String page, double confidence) {
+        add(getClusterId(cluster), getPageId(page), 1, 0, confidence, confidence);
+    }
+
+    public void add(String cluster, Link link) {
+        add(getClusterId(cluster), getPageId(link.getPage()), link.getCount(), link.getError(), link.getSum(),
+                link.getMax());
+    }
+
+    public void merge(LinkStatistics other) {
+        for (String cluster : other.getClusters()) {
+            int clusterId = getClusterId(cluster);
+            for (Link link : other.getLinks(cluster)) {
+                add(clusterId, getPageId(link.getPage()), link.getCount(), link.getError(), link.getSum(),
+                        link.getMax());
+            }
+        }
+    }
+
+    /**
+     * Get the clusters with at least a link, in order of first link.
+     */
+    public List<String> getClusters() {
+        return Collections.unmodifiableList(clusters);
+    }
+
+    /**
+     * Get the links of a cluster, ranked by count and maximum confidence.
+     */
+    public List<Link> getLinks(String cluster) {
+        Integer clusterId = clusterIds.get(cluster);
+        if (clusterId == null) {
+            return Collections.emptyList();
+        }
+        Links links = clusterLinks.get(clusterId);
+        List<Link> result = new ArrayList<>(links.size);
+        for (int i = 0; i < links.size; i++) {
+            result.add(new Link(pages.get(links.pages[i]), links.counts[i], links.errors[i], links.sums[i],
+                    links.maxes[i]));
+        }
+        result.sort((l1, l2) -> {
+            int compare = Integer.compare(l2.getCount(), l1.getCount());
+            if (compare == 0) {
+                compare = Double.compare(l2.getMax(), l1.getMax());
+            }
+            return compare != 0 ? compare : l1.getPage().compareTo(l2.getPage());
+        });
+        return result;
+    }
+
+    /**
+     * Get the number of (cluster, page) links.
+     */
+    public int size() {
+        return indexes.size();
+    }
+
+    private int getClusterId(String cluster) {
+        Integer id = clusterIds.get(cluster);
+        if (id == null) {
+            id = clusters.size();
+            clusterIds.put(cluster, id);
+            clusters.add(cluster);
+            clusterLinks.add(new Links());
+        }
+        return id;
+    }
+
+    private int getPageId(String page) {
+        Integer id = pageIds.get(page);
+        if (id == null) {
+            id = pages.size();
+            pageIds.put(page, id);
+            pages.add(page);
+        }
+        return id;
+    }
+
+    private void add(int clusterId, int pageId, int count, int error, double sum, double max) {
+        Links links = clusterLinks.get(clusterId);
+        long key = LongIntHashMap.pack(clusterId, pageId);
+        int index = indexes.get(key) - 1;
+        if (index >= 0) {
+            links.counts[index] += count;
+            links.errors[index] += error;
+            links.sums[index] += sum;
+            links.maxes[index] = Math.max(links.maxes[index], max);
+            return;
+        }
+
+        if (maxLinksPerCluster <= 0 || links.size < maxLinksPerCluster) {
+            index = links.append();
+            links.counts[index] = count;
+            links.errors[index] = error;
+        } else {
+            index = 0;
+            for (int i = 1; i < links.size; i++) {
+                if (links.counts[i] < links.counts[index]) {
+                    index = i;
+                }
+            }
+            indexes.remove(LongIntHashMap.pack(clusterId, links.pages[index]));
+            links.errors[index] = links.counts[index] + error;
+            links.counts[index] += count;
+        }
+        links.pages[index] = pageId;
+        links.sums[index] = sum;
+        links.maxes[index] = max;
+        indexes.put(key, index + 1);
+    }
+
+    private static class Links {
+
+        int size = 0;
+        int[] pages = new int[2];
+        int[] counts = new int[2];
+        int[] errors = new int[2];
+        double[] sums = new double[2];
+        double[] maxes = new double[2];
+
+        int append() {
+            if (size == pages.length) {
+                pages = Arrays.copyOf(pages, size * 2);
+                counts = Arrays.copyOf(counts, size * 2);
+                errors = Arrays.copyOf(errors, size * 2);
+                sums = Arrays.copyOf(sums, size * 2);
+                maxes = Arrays.copyOf(maxes, size * 2);
+            }
+            return size++;
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package eu.fbk.dkm.cliques.util;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Throughput metrics of a tool run: counters (e.g. documents and sentences read), gauges (e.g. vertices and edges
+ * of the graph being built), the time spent in each phase and the peak heap (the larger of the heap sampled and the
+ * sum of the peaks of the heap pools, which is an upper bound).
+ * <p>
+ * Counters and gauges can be updated by any thread. Every interval, a background thread logs the counters with
+ * their rate since the previous sample and the gauges, and keeps the sample; at the end, {@link #write(File)} saves
+ * a JSON report with totals, average rates, phases and samples, so that runs can be compared.
+ */
+
+public class Metrics implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(Metrics.class);
+    public static final int DEFAULT_INTERVAL = 60;
+
+    private final String tool;
+    private final long start = System.nanoTime();
+    private final Map<String, AtomicLong> counters = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> gauges = new ConcurrentHashMap<>();
+    private final Map<String, Long> phases = new LinkedHashMap<>();
+    private final List<JsonObject> samples = new ArrayList<>();
+    private final Map<String, Long> lastCounts = new HashMap<>();
+    private final ScheduledExecutorService scheduler;
+    private String phase = null;
+    private long phaseStart;
+    private long lastSample = start;
+    private long peakHeap = 0;
+    private long end = -1;
+
+    public Metrics(String tool) {
+        this(tool, DEFAULT_INTERVAL);
+    }
+
+    /**
+     * @param interval The seconds between two samples, 0 not to sample
+     */
+    public Metrics(String tool, int interval) {
+        this.tool = tool;
+        if (interval > 0) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "metrics");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.scheduleAtFixedRate(this::sample, interval, interval, TimeUnit.SECONDS);
+        } else {
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Start a phase, ending the current one. The time of phases with the same name is summed.
+     */
+    public synchronized void startPhase(String name) {
+        endPhase();
+        LOGGER.debug("Phase {} started", name);
+        phase = name;
+        phaseStart = System.nanoTime();
+    }
+
+    public synchronized void endPhase() {
+        if (phase != null) {
+            long elapsed = System.nanoTime() - phaseStart;
+            phases.merge(phase, elapsed, Long::sum);
+            LOGGER.info("Phase {} took {} ms", phase, TimeUnit.NANOSECONDS.toMillis(elapsed));
+            phase = null;
+        }
+    }
+
+    public void increment(String counter) {
+        add(counter, 1);
+    }
+
+    public void add(String counter, long delta) {
+        counters.computeIfAbsent(counter, c -> new AtomicLong()).addAndGet(delta);
+    }
+
+    public void set(String gauge, long value) {
+        gauges.computeIfAbsent(gauge, g -> new AtomicLong()).set(value);
+    }
+
+    public long getCount(String counter) {
+        AtomicLong count = counters.get(counter);
+        return count != null ? count.get() : 0;
+    }
+
+    /**
+     * Stop sampling and end the current phase.
+     */
+    @Override
+    public synchronized void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        endPhase();
+        if (end < 0) {
+            end = System.nanoTime();
+            updatePeakHeap();
+        }
+    }
+
+    /**
+     * Write the JSON report, closing the metrics if needed.
+     */
+    public void write(File file) throws IOException {
+        close();
+        JsonObject report = new JsonObject();
+        synchronized (this) {
+            double seconds = (end - start) / 1e9;
+            report.addProperty("tool", tool);
+            report.addProperty("seconds", seconds);
+            report.addProperty("peakHeapBytes", peakHeap);
+
+            JsonObject counterReport = new JsonObject();
+            for (String counter : new TreeSet<>(counters.keySet())) {
+                long count = counters.get(counter).get();
+                JsonObject entry = new JsonObject();
+                entry.addProperty("total", count);
+                entry.addProperty("perSecond", seconds > 0 ? count / seconds : 0);
+                counterReport.add(counter, entry);
+            }
+            report.add("counters", counterReport);
+
+            JsonObject gaugeReport = new JsonObject();
+            for (String gauge : new TreeSet<>(gauges.keySet())) {
+                gaugeReport.addProperty(gauge, gauges.get(gauge).get());
+            }
+            report.add("gauges", gaugeReport);
+
+            JsonObject phaseReport = new JsonObject();
+            for (Map.Entry<String, Long> entry : phases.entrySet()) {
+                phaseReport.addProperty(entry.getKey(), entry.getValue() / 1e9);
+            }
+            report.add("phaseSeconds", phaseReport);
+
+            JsonArray sampleReport = new JsonArray();
+            for (JsonObject sample : samples) {
+                sampleReport.add(sample);
+            }
+            report.add("samples", sampleReport);
+        }
+
+        Gson gson = new GsonBuilder().setPrettyPrinting().create();
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            gson.toJson(report, writer);
+        }
+    }
+
+    private synchronized void sample() {
+        long now = System.nanoTime();
+        double seconds = (now - lastSample) / 1e9;
+        lastSample = now;
+        long heap = updatePeakHeap();
+
+        JsonObject sample = new JsonObject();
+        sample.addProperty("seconds", (now - start) / 1e9);
+        if (phase != null) {
+            sample.addProperty("phase", phase);
+        }
+        StringBuilder message = new StringBuilder();
+        for (String counter : new TreeSet<>(counters.keySet())) {
+            long count = counters.get(counter).get();
+            Long lastCount = lastCounts.put(counter, count);
+            double rate = (count - (lastCount != null ? lastCount : 0)) / seconds;
+            sample.addProperty(counter, count);
+            sample.addProperty(counter + "PerSecond", rate);
+            message.append(String.format("%s: %d (%.1f/s), ", counter, count, rate));
+        }
+        for (String gauge : new TreeSet<>(gauges.keySet())) {
+            long value = gauges.get(gauge).get();
+            sample.addProperty(gauge, value);
+            message.append(gauge).append(": ").append(value).append(", ");
+        }
+        sample.addProperty("heapBytes", heap);
+        samples.add(sample);
+
+        message.append("heap: ").append(heap >> 20).append(" MB");
+        LOGGER.info("{}{}", phase != null ? "[" + phase + "] " : "", message);
+    }
+
+    /**
+     * @return the heap in use
+     */
+    private long updatePeakHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = runtime.totalMemory() - runtime.freeMemory();
+        long poolPeaks = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null) {
+                poolPeaks += pool.getPeakUsage().getUsed();
+            }
+        }
+        peakHeap = Math.max(peakHeap, Math.max(used, poolPeaks));
+        return used;
+    }
+}
@@ -0,0 +1,81 @@
+package eu.fbk.dkm.cliques.util;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Resolves the short mentions of a person in a document (e.g. "Smith") to a full name seen before in the same
+ * document (e.g. "John Smith"), that is to the longest name added so far whose last tokens are the tokens of the
+ * mention. Among names with the same number of tokens, the first one added wins.
+ * <p>
+ * Names are kept in a trie of their tokens in reverse order, where each node remembers the best name below it, so a
+ * mention is resolved by walking its tokens from the last one, in time proportional to its length and independent
+ * of the number of names. Names and mentions are expected to be normalized, with tokens separated by single spaces.
+ */
+
+public class NameResolver {
+
+    private final Node root = new Node();
+    private int size = 0;
+
+    /**
+     * Add a full name, which later mentions can resolve to.
+     */
+    public void add(String name) {
+        String[] tokens = name.split(" ");
+        Node node = root;
+        for (int i = tokens.length - 1; i >= 0; i--) {
+            node = node.children.computeIfAbsent(tokens[i], token -> new Node());
+            if (node.best == null || node.bestLength < tokens.length) {
+                node.best = name;
+                node.bestLength = tokens.length;
+            }
+        }
+        if (!node.isName) {
+            node.isName = true;
+            size++;
+        }
+    }
+
+    /**
+     * @return the longest name added ending with the tokens of the mention (possibly the mention itself), or null if
+     * there is none
+     */
+    public String resolve(String mention) {
+        Node node = root;
+        int end = mention.length();
+        while (end >= 0) {
+            int start = mention.lastIndexOf(' ', end - 1);
+            node = node.children.get(mention.substring(start + 1, end));
+            if (node == null) {
+                return null;
+            }
+            end = start;
+        }
+        return node.best;
+    }
+
+    public boolean contains(String name) {
+        Node node = root;
+        String[] tokens = name.split(" ");
+        for (int i = tokens.length - 1; i >= 0 && node != null; i--) {
+            node = node.children.get(tokens[i]);
+        }
+        return node != null && node.isName;
+    }
+
+    /**
+     * Get the number of distinct names added.
+     */
+    public int size() {
+        return size;
+    }
+
+    private static class Node {
+
+        final Map<String, Node> children = new HashMap<>(2);
+        String best = null;
+        int bestLength = 0;
+        boolean isName = false;
+    }
+}
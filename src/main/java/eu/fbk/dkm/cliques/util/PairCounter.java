@@ -0,0 +1,342 @@
+package eu.fbk.dkm.cliques.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Counts unordered pairs of names, such as persons co-occurring in a sentence.
+ * <p>
+ * Names are interned once to int ids, and each pair is packed into a single {@code long} (smaller id first) and
+ * counted in a {@link LongIntHashMap}: a pair takes 12 bytes in the table instead of a set of two strings with its
+ * boxed count, and counting it hashes one long instead of two strings.
+ * <p>
+ * With a maximum number of pairs in memory, the table is written to a temporary file as a run sorted by pair and
+ * cleared whenever it is full. {@link #forEachSorted(Visitor)} then merges the runs summing the counts of the same
+ * pair, and sorts the merged pairs by count in chunks of the same size, merging those as well: memory is bounded by
+ * the maximum number of pairs (and the names), whatever the number of distinct pairs. The order of the pairs is the
+ * same with and without runs.
+ */
+
+public class PairCounter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PairCounter.class);
+
+    /**
+     * Upper bound of the heap taken by a pair kept in memory, including the sort before a spill.
+     */
+    public static final int BYTES_PER_PAIR = 48;
+
+    private static final int MAX_FAN_IN = 64;
+
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final List<String> names = new ArrayList<>();
+    private final int maxPairs;
+    private final File tempFolder;
+    private final List<File> runs = new ArrayList<>();
+    private LongIntHashMap counts;
+
+    public PairCounter() {
+        this(0, null);
+    }
+
+    /**
+     * @param maxPairs   The number of pairs to keep in memory before writing them to disk, 0 for no limit
+     * @param tempFolder The folder of the temporary files, or null for the default one
+     */
+    public PairCounter(int maxPairs, File tempFolder) {
+        this.maxPairs = maxPairs;
+        this.tempFolder = tempFolder;
+        this.counts = maxPairs > 0 ? new LongIntHashMap(maxPairs) : new LongIntHashMap();
+    }
+
+    /**
+     * Called with each pair, in the order of {@link #forEachSorted(Visitor)}.
+     */
+    public interface Visitor {
+
+        void visit(String name1, String name2, int count) throws IOException;
+
+    }
+
+    /**
+     * @return the id of a name, assigning the next one if the name is new
+     */
+    public int intern(String name) {
+        Integer id = ids.get(name);
+        if (id == null) {
+            id = names.size();
+            ids.put(name, id);
+            names.add(name);
+        }
+        return id;
+    }
+
+    public String getName(int id) {
+        return names.get(id);
+    }
+
+    /**
+     * Add to the count of the pair of two distinct ids, in any order.
+     */
+    public void add(int id1, int id2, int count) throws IOException {
+        counts.add(LongIntHashMap.pack(Math.min(id1, id2), Math.max(id1, id2)), count);
+        if (maxPairs > 0 && counts.size() >= maxPairs) {
+            spill();
+        }
+    }
+
+    /**
+     * Get the number of distinct pairs in memory, which is the number of distinct pairs if none was spilled.
+     */
+    public int size() {
+        return counts.size();
+    }
+
+    /**
+     * Get the number of runs written to disk.
+     */
+    public int getRunCount() {
+        return runs.size();
+    }
+
+    /**
+     * Visit the pairs by decreasing count, then by increasing ids, with the name with the smaller id first. The
+     * counter cannot be used afterwards.
+     */
+    public void forEachSorted(Visitor visitor) throws IOException {
+        if (runs.isEmpty()) {
+            long[] keys = sortedKeys();
+            int[] values = new int[keys.length];
+            for (int i = 0; i < keys.length; i++) {
+                values[i] = counts.get(keys[i]);
+            }
+            counts = null;
+            visitSorted(keys, values, keys.length, visitor);
+            return;
+        }
+
+        if (counts.size() > 0) {
+            spill();
+        }
+        counts = null;
+        LOGGER.info("Merging {} runs of pairs", runs.size());
+
+        // Merge the runs by pair, then sort the merged pairs by count in chunks of at most maxPairs
+        List<File> sortedRuns = new ArrayList<>();
+        long[] keys = new long[maxPairs];
+        int[] values = new int[maxPairs];
+        int[] size = new int[1];
+        try {
+            merge(runs, RunReader.BY_KEY, true, (key, count) -> {
+                if (size[0] == maxPairs) {
+                    sortedRuns.add(writeSortedChunk(keys, values, size[0]));
+                    size[0] = 0;
+                }
+                keys[size[0]] = key;
+                values[size[0]] = count;
+                size[0]++;
+            });
+            delete(runs);
+
+            if (sortedRuns.isEmpty()) {
+                visitSorted(keys, values, size[0], visitor);
+            } else {
+                if (size[0] > 0) {
+                    sortedRuns.add(writeSortedChunk(keys, values, size[0]));
+                }
+                merge(sortedRuns, RunReader.BY_COUNT, false, (key, count) -> visitor.visit(
+                        names.get(LongIntHashMap.high(key)), names.get(LongIntHashMap.low(key)), count));
+            }
+        } finally {
+            delete(runs);
+            delete(sortedRuns);
+        }
+    }
+
+    private long[] sortedKeys() {
+        long[] keys = new long[counts.size()];
+        int[] size = new int[1];
+        counts.forEach((key, count) -> keys[size[0]++] = key);
+        Arrays.sort(keys);
+        return keys;
+    }
+
+    /**
+     * Write the pairs in memory as a run sorted by pair, and clear them.
+     */
+    private void spill() throws IOException {
+        long[] keys = sortedKeys();
+        File run = createRun();
+        runs.add(run);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run)));
+        for (long key : keys) {
+            out.writeLong(key);
+            out.writeInt(counts.get(key));
+        }
+        out.close();
+        counts.clear();
+        LOGGER.debug("Written run {} with {} pairs", runs.size(), keys.length);
+    }
+
+    /**
+     * @return the indexes of the first size pairs (sorted by pair) in the low bits, by decreasing count and then by
+     * pair
+     */
+    private static long[] order(int[] values, int size) {
+        // Counts are positive: Integer.MAX_VALUE - count in the high bits sorts them in decreasing order, and the
+        // index of the pair in the low bits breaks ties by pair
+        long[] order = new long[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = LongIntHashMap.pack(Integer.MAX_VALUE - values[i], i);
+        }
+        Arrays.sort(order);
+        return order;
+    }
+
+    private void visitSorted(long[] keys, int[] values, int size, Visitor visitor) throws IOException {
+        for (long entry : order(values, size)) {
+            long key = keys[LongIntHashMap.low(entry)];
+            visitor.visit(names.get(LongIntHashMap.high(key)), names.get(LongIntHashMap.low(key)),
+                    Integer.MAX_VALUE - LongIntHashMap.high(entry));
+        }
+    }
+
+    private File writeSortedChunk(long[] keys, int[] values, int size) throws IOException {
+        File run = createRun();
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run)));
+        for (long entry : order(values, size)) {
+            int index = LongIntHashMap.low(entry);
+            out.writeLong(keys[index]);
+            out.writeInt(values[index]);
+        }
+        out.close();
+        return run;
+    }
+
+    private File createRun() throws IOException {
+        File run = File.createTempFile("pairs", ".run", tempFolder);
+        run.deleteOnExit();
+        return run;
+    }
+
+    /**
+     * K-way merge of runs sorted with the same order, optionally summing the counts of the same pair. With more than
+     * {@value #MAX_FAN_IN} runs, groups of runs are first merged into longer runs, which replace them in the list.
+     */
+    private void merge(List<File> files, Comparator<RunReader> comparator, boolean sum, RunVisitor visitor)
+            throws IOException {
+        while (files.size() > MAX_FAN_IN) {
+            int size = files.size();
+            List<File> merged = new ArrayList<>();
+            try {
+                for (int i = 0; i < size; i += MAX_FAN_IN) {
+                    File run = createRun();
+                    merged.add(run);
+                    DataOutputStream out = new DataOutputStream(
+                            new BufferedOutputStream(new FileOutputStream(run)));
+                    try {
+                        mergeRuns(files.subList(i, Math.min(size, i + MAX_FAN_IN)), comparator, sum,
+                                (key, count) -> {
+                                    out.writeLong(key);
+                                    out.writeInt(count);
+                                });
+                    } finally {
+                        out.close();
+                    }
+                }
+            } finally {
+                files.addAll(merged);
+            }
+            delete(files.subList(0, size));
+        }
+        mergeRuns(files, comparator, sum, visitor);
+    }
+
+    private static void mergeRuns(List<File> files, Comparator<RunReader> comparator, boolean sum,
+            RunVisitor visitor) throws IOException {
+        PriorityQueue<RunReader> queue = new PriorityQueue<>(Math.max(1, files.size()), comparator);
+        try {
+            for (File file : files) {
+                RunReader reader = new RunReader(file);
+                if (reader.next()) {
+                    queue.add(reader);
+                } else {
+                    reader.close();
+                }
+            }
+            while (!queue.isEmpty()) {
+                RunReader reader = queue.poll();
+                long key = reader.key;
+                int count = reader.count;
+                advance(queue, reader);
+                while (sum && !queue.isEmpty() && queue.peek().key == key) {
+                    reader = queue.poll();
+                    count += reader.count;
+                    advance(queue, reader);
+                }
+                visitor.visit(key, count);
+            }
+        } finally {
+            for (RunReader reader : queue) {
+                reader.close();
+            }
+        }
+    }
+
+    private static void advance(PriorityQueue<RunReader> queue, RunReader reader) throws IOException {
+        if (reader.next()) {
+            queue.add(reader);
+        } else {
+            reader.close();
+        }
+    }
+
+    private static void delete(List<File> files) {
+        for (File file : files) {
+            if (file.exists() && !file.delete()) {
+                LOGGER.warn("Cannot delete {}", file);
+            }
+        }
+        files.clear();
+    }
+
+    private interface RunVisitor {
+
+        void visit(long key, int count) throws IOException;
+
+    }
+
+    private static class RunReader {
+
+        static final Comparator<RunReader> BY_KEY = (r1, r2) -> Long.compare(r1.key, r2.key);
+        static final Comparator<RunReader> BY_COUNT = (r1, r2) -> {
+            int compare = Integer.compare(r2.count, r1.count);
+            return compare != 0 ? compare : Long.compare(r1.key, r2.key);
+        };
+
+        private final DataInputStream in;
+        long key;
+        int count;
+
+        RunReader(File file) throws IOException {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        }
+
+        boolean next() throws IOException {
+            try {
+                key = in.readLong();
+            } catch (EOFException e) {
+                return false;
+            }
+            count = in.readInt();
+            return true;
+        }
+
+        void close() throws IOException {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package eu.fbk.dkm.cliques.util;
+
+import java.util.*;
+
+/**
+ * Remembers which DBpedia pages have been seen with a given type (e.g. Person), out of the type sets of the linked
+ * pages of each document.
+ * <p>
+ * Only the answer is kept: pages with the type are stored as 64-bit fingerprints of their URI (collisions are
+ * negligible below billions of pages), the other pages are not stored at all. Distinct type sets are interned with
+ * an id, and a bitset over the ids tells which sets contain the type, so the sets repeated in every document are
+ * checked once. At most a given number of sets is interned; after that, new sets are checked directly, so memory
+ * does not grow with the corpus beyond the pages with the type.
+ */
+
+public class TypeRegistry {
+
+    private final String type;
+    private final int maxTypeSets;
+    private final Map<Set<String>, Integer> typeSetIds = new HashMap<>();
+    private final BitSet typeSetsWithType = new BitSet();
+    private final LongIntHashMap references = new LongIntHashMap();
+
+    /**
+     * @param type        The type to remember
+     * @param maxTypeSets The maximum number of type sets to intern
+     */
+    public TypeRegistry(String type, int maxTypeSets) {
+        this.type = type;
+        this.maxTypeSets = maxTypeSets;
+    }
+
+    /**
+     * Add the types of a page, seen in a document.
+     */
+    public void add(String reference, Set<String> types) {
+        if (hasType(types)) {
+            references.put(fingerprint(reference), 1);
+        }
+    }
+
+    /**
+     * Check whether the page has been seen with the type.
+     */
+    public boolean contains(String reference) {
+        return references.containsKey(fingerprint(reference));
+    }
+
+    /**
+     * Get the number of pages seen with the type.
+     */
+    public int size() {
+        return references.size();
+    }
+
+    public int getTypeSetCount() {
+        return typeSetIds.size();
+    }
+
+    private boolean hasType(Set<String> types) {
+        Integer id = typeSetIds.get(types);
+        if (id != null) {
+            return typeSetsWithType.get(id);
+        }
+        boolean hasType = types.contains(type);
+        if (typeSetIds.size() < maxTypeSets) {
+            id = typeSetIds.size();
+            typeSetIds.put(Collections.unmodifiableSet(new HashSet<>(types)), id);
+            typeSetsWithType.set(id, hasType);
+        }
+        return hasType;
+    }
+
+    /**
+     * 64-bit FNV-1a hash of the chars of a string, with a final mix.
+     */
+    private static long fingerprint(String string) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < string.length(); i++) {
+            hash ^= string.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
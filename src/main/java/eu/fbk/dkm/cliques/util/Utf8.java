@@ -0,0 +1,68 @@
+package eu.fbk.dkm.cliques.util;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Comparison of strings with UTF-8 keys stored in a buffer, in byte order, without encoding the strings into new
+ * arrays. Byte order is the order of code points, so keys sorted this way can be searched with strings.
+ */
+
+final class Utf8 {
+
+    private Utf8() {
+    }
+
+    /**
+     * Compare the UTF-8 encoding of a string, from the given char, with the key between two positions of a buffer.
+     */
+    static int compare(String string, int from, ByteBuffer buffer, int start, int end) {
+        int position = start;
+        int i = from;
+        while (i < string.length()) {
+            int codePoint = string.codePointAt(i);
+            i += Character.charCount(codePoint);
+            if (codePoint >= Character.MIN_SURROGATE && codePoint <= Character.MAX_SURROGATE) {
+                codePoint = '?'; // As done by String.getBytes() for unpaired surrogates
+            }
+            int length = codePoint < 0x80 ? 1 : codePoint < 0x800 ? 2 : codePoint < 0x10000 ? 3 : 4;
+            for (int j = 0; j < length; j++) {
+                if (position == end) {
+                    return 1;
+                }
+                int difference = encode(codePoint, length, j) - (buffer.get(position++) & 0xff);
+                if (difference != 0) {
+                    return difference;
+                }
+            }
+        }
+        return position == end ? 0 : -1;
+    }
+
+    static int compare(byte[] key1, byte[] key2) {
+        int length = Math.min(key1.length, key2.length);
+        for (int i = 0; i < length; i++) {
+            int difference = (key1[i] & 0xff) - (key2[i] & 0xff);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return key1.length - key2.length;
+    }
+
+    private static int encode(int codePoint, int length, int index) {
+        int shift = 6 * (length - 1 - index);
+        if (index > 0) {
+            return 0x80 | codePoint >> shift & 0x3f;
+        }
+        switch (length) {
+        case 1:
+            return codePoint;
+        case 2:
+            return 0xc0 | codePoint >> shift;
+        case 3:
+            return 0xe0 | codePoint >> shift;
+        default:
+            return 0xf0 | codePoint >> shift;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package eu.fbk.dkm.cliques.naf;
+
+import eu.fbk.dkm.cliques.naf.DocumentExtraction.Candidate;
+import eu.fbk.dkm.cliques.naf.DocumentExtraction.Mention;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Damaged entries must be treated as missing and deleted, never make the read fail.
+ */
+
+public class ExtractionCacheTest {
+
+    @Test
+    public void testDamagedEntries() throws Exception {
+        File folder = File.createTempFile("cache", "");
+        folder.delete();
+        folder.mkdirs();
+        folder.deleteOnExit();
+
+        ExtractionCache cache = new ExtractionCache(folder, "test");
+        String key = cache.getKey("<NAF/>".getBytes(StandardCharsets.UTF_8));
+        Map<String, Set<String>> types = new HashMap<>();
+        types.put("http://dbpedia.org/resource/Barack_Obama", new HashSet<>(Arrays.asList("Person", "Agent")));
+        List<List<Mention>> sentences = new ArrayList<>();
+        sentences.add(Collections.singletonList(new Mention(0, "Barack Obama",
+                Collections.singletonList(new Candidate("http://dbpedia.org/resource/Barack_Obama", 0.9)))));
+        sentences.add(Collections.<Mention>emptyList());
+        cache.put(key, new DocumentExtraction(types, sentences));
+
+        File subfolder = new File(folder, key.substring(0, 2));
+        subfolder.deleteOnExit();
+        File file = new File(subfolder, key.substring(2));
+        file.deleteOnExit();
+        byte[] content = Files.readAllBytes(file.toPath());
+        DocumentExtraction extraction = cache.get(key);
+        assertEquals(types, extraction.getTypes());
+        assertEquals(2, extraction.getSentences().size());
+        assertEquals("Barack Obama", extraction.getSentences().get(0).get(0).getStr());
+
+        // Truncated at every length, and with garbage appended
+        for (int length = 0; length <= content.length; length++) {
+            byte[] damaged = Arrays.copyOf(content, length == content.length ? length + 3 : length);
+            Files.write(file.toPath(), damaged);
+            assertEquals(null, cache.get(key));
+            assertEquals(false, file.exists());
+        }
+
+        // A huge count must not be allocated
+        Files.write(file.toPath(), content);
+        try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+            out.seek(4);
+            out.writeInt(Integer.MAX_VALUE);
+        }
+        assertEquals(null, cache.get(key));
+        assertEquals(false, file.exists());
+
+        assertEquals(1, cache.getHits());
+        assertEquals(content.length + 2, cache.getMisses());
+    }
+}
@@ -0,0 +1,165 @@
+package eu.fbk.dkm.cliques.naf;
+
+import org.junit.Test;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Reads archives written by GNU tar 1.34 (with --format=gnu and --format=pax) and by hand, with names longer than
+ * 100 bytes, a symlink with a long target, a hard link and a file that is not a NAF.
+ */
+
+public class NafInputTest {
+
+    private static final String LONG_NAME = "corpus/" + repeat('a', 60) + "/" + repeat('c', 100)
+            + "-document.naf.gz";
+
+    @Test
+    public void testGnuTar() throws Exception {
+        checkLongNames(resource("long-names-gnu.tgz"));
+    }
+
+    @Test
+    public void testPaxTar() throws Exception {
+        checkLongNames(resource("long-names-pax.tgz"));
+    }
+
+    @Test
+    public void testPaxSize() throws Exception {
+        // The size in the ustar header is wrong on purpose: the one of the pax header must be used
+        byte[] content = "<NAF>pax size</NAF>".getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream tar = new ByteArrayOutputStream();
+        writeEntry(tar, "PaxHeaders/x", 'x',
+                (paxRecord("path", LONG_NAME.replace(".naf.gz", ".naf")) + paxRecord("size",
+                        Integer.toString(content.length))).getBytes(StandardCharsets.UTF_8), -1);
+        writeEntry(tar, "truncated.naf", '0', content, 3);
+        writeEntry(tar, "global", 'g', paxRecord("comment", "ignored").getBytes(StandardCharsets.UTF_8), -1);
+        writeEntry(tar, "next.naf", '0', "<NAF>next</NAF>".getBytes(StandardCharsets.UTF_8), -1);
+        tar.write(new byte[1024]);
+
+        File file = File.createTempFile("pax-size", ".tar");
+        file.deleteOnExit();
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write(tar.toByteArray());
+        }
+
+        List<String> names = new ArrayList<>();
+        List<String> contents = new ArrayList<>();
+        read(file, names, contents);
+        assertEquals(Arrays.asList(file.getPath() + "!/" + LONG_NAME.replace(".naf.gz", ".naf"),
+                file.getPath() + "!/next.naf"), names);
+        assertEquals(Arrays.asList("<NAF>pax size</NAF>", "<NAF>next</NAF>"), contents);
+    }
+
+    @Test
+    public void testFolder() throws Exception {
+        File folder = File.createTempFile("nafs", "");
+        folder.delete();
+        folder.mkdirs();
+        folder.deleteOnExit();
+        File file = new File(folder, "doc.naf.gz");
+        file.deleteOnExit();
+        try (OutputStream out = new GZIPOutputStream(new FileOutputStream(file))) {
+            out.write("<NAF>folder</NAF>".getBytes(StandardCharsets.UTF_8));
+        }
+
+        try (NafInput input = NafInput.open(folder)) {
+            NafInput.Entry entry = input.next();
+            assertEquals(file.getPath(), entry.getName());
+            assertEquals("<NAF>folder</NAF>", toString(entry));
+            byte[] content = entry.getContent();
+            assertArrayEquals(java.nio.file.Files.readAllBytes(file.toPath()), content);
+            assertEquals("<NAF>folder</NAF>", toString(entry));
+            assertEquals(null, input.next());
+        }
+    }
+
+    private static void checkLongNames(File archive) throws IOException {
+        List<String> names = new ArrayList<>();
+        List<String> contents = new ArrayList<>();
+        read(archive, names, contents);
+        assertEquals(Arrays.asList(archive.getPath() + "!/" + LONG_NAME, archive.getPath() + "!/corpus/hardlink.naf"),
+                names);
+        assertEquals(Arrays.asList("<NAF>long</NAF>", "<NAF>short</NAF>"), contents);
+    }
+
+    private static void read(File archive, List<String> names, List<String> contents) throws IOException {
+        try (NafInput input = NafInput.open(archive)) {
+            NafInput.Entry entry;
+            while ((entry = input.next()) != null) {
+                names.add(entry.getName());
+                contents.add(toString(entry));
+            }
+        }
+    }
+
+    private static String toString(NafInput.Entry entry) throws IOException {
+        StringBuilder builder = new StringBuilder();
+        try (Reader reader = entry.openReader()) {
+            int c;
+            while ((c = reader.read()) >= 0) {
+                builder.append((char) c);
+            }
+        }
+        return builder.toString();
+    }
+
+    private static File resource(String name) throws Exception {
+        return new File(NafInputTest.class.getResource(name).toURI());
+    }
+
+    /**
+     * @param size The size to write in the header, -1 for the size of the data
+     */
+    private static void writeEntry(OutputStream out, String name, char type, byte[] data, int size)
+            throws IOException {
+        byte[] header = new byte[512];
+        put(header, 0, name);
+        put(header, 100, "0000644");
+        put(header, 108, "0000000");
+        put(header, 116, "0000000");
+        put(header, 124, String.format("%011o", size >= 0 ? size : data.length));
+        put(header, 136, "00000000000");
+        Arrays.fill(header, 148, 156, (byte) ' ');
+        header[156] = (byte) type;
+        put(header, 257, "ustar");
+        put(header, 263, "00");
+        int checksum = 0;
+        for (byte b : header) {
+            checksum += b & 0xff;
+        }
+        put(header, 148, String.format("%06o", checksum));
+        out.write(header);
+        out.write(data);
+        out.write(new byte[(512 - data.length % 512) % 512]);
+    }
+
+    private static void put(byte[] header, int offset, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        System.arraycopy(bytes, 0, header, offset, bytes.length);
+    }
+
+    private static String paxRecord(String key, String value) {
+        String record = " " + key + "=" + value + "\n";
+        int length = record.getBytes(StandardCharsets.UTF_8).length;
+        int digits = Integer.toString(length).length();
+        if (Integer.toString(length + digits).length() > digits) {
+            digits++;
+        }
+        return (length + digits) + record;
+    }
+
+    private static String repeat(char c, int count) {
+        char[] chars = new char[count];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+}